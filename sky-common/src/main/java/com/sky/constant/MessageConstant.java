@@ -24,5 +24,11 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String PAYMENT_UNAVAILABLE = "支付服务暂时不可用，请稍后重试";
+    public static final String PAYMENT_BUSY = "支付请求过多，请稍后重试";
+    public static final String PAYMENT_TIMEOUT = "支付服务响应超时，请稍后重试";
+    public static final String REPORT_DATE_RANGE_INVALID = "统计日期区间无效，开始日期不能晚于结束日期，且不能超过366天";
+    public static final String CHAT_CONTENT_INVALID = "消息内容为空或过长";
+    public static final String CHAT_ACCESS_DENIED = "无权访问该订单的聊天";
 
 }
@@ -0,0 +1,24 @@
+package com.sky.constant;
+
+/**
+ * WebSocket订阅主题
+ */
+public class WebSocketTopicConstant {
+
+    //管理端来单提醒和催单
+    public static final String ADMIN = "admin";
+
+    //单个订单，用户端订单页面和订单沟通
+    public static final String ORDER_PREFIX = "order:";
+
+    //单个用户
+    public static final String USER_PREFIX = "user:";
+
+    public static String order(Long orderId) {
+        return ORDER_PREFIX + orderId;
+    }
+
+    public static String user(Long userId) {
+        return USER_PREFIX + userId;
+    }
+}
@@ -0,0 +1,9 @@
+package com.sky.exception;
+
+public class ChatBusinessException extends BaseException {
+
+    public ChatBusinessException(String msg) {
+        super(msg);
+    }
+
+}
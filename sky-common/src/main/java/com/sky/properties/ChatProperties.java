@@ -0,0 +1,49 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.chat")
+@Data
+public class ChatProperties {
+
+    /**
+     * 待写入聊天记录队列的容量，队列满时直接写入数据库
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 每次批量写入的最大条数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 批量写入的等待时间，单位毫秒，这段时间内的消息合并为一条insert语句
+     */
+    private long flushDelay = 50;
+
+    /**
+     * 单条消息的最大长度
+     */
+    private int maxContentLength = 500;
+
+    /**
+     * 聊天记录每页默认条数
+     */
+    private int historyPageSize = 50;
+
+    /**
+     * 聊天记录每页最大条数
+     */
+    private int historyMaxPageSize = 200;
+
+    /**
+     * 增量拉取聊天记录时往前多查的时间，单位毫秒
+     * 消息id在发送时生成，写入数据库最多延迟flush-delay，多个节点之间还有时钟偏差，
+     * 写入顺序和id顺序不一致，多查一段时间内的消息避免漏掉，重复的消息由客户端按id去重
+     */
+    private long historyOverlap = 5000;
+
+}
@@ -0,0 +1,52 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.http-client")
+@Data
+public class HttpClientProperties {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 200;
+
+    /**
+     * 每个目标主机的最大连接数
+     */
+    private int maxPerRoute = 50;
+
+    /**
+     * 建立连接超时时间（毫秒）
+     */
+    private int connectTimeout = 5000;
+
+    /**
+     * 从连接池获取连接的超时时间（毫秒）
+     */
+    private int connectionRequestTimeout = 5000;
+
+    /**
+     * 读取响应超时时间（毫秒）
+     */
+    private int socketTimeout = 5000;
+
+    /**
+     * 服务端未指定keep-alive时长时连接的保持时间（毫秒）
+     */
+    private long keepAlive = 30000;
+
+    /**
+     * 空闲超过该时间的连接被后台线程关闭（毫秒）
+     */
+    private long maxIdleTime = 60000;
+
+    /**
+     * 连接空闲超过该时间后复用前先检查是否可用（毫秒）
+     */
+    private int validateAfterInactivity = 2000;
+
+}
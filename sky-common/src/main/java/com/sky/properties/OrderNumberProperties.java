@@ -0,0 +1,18 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-number")
+@Data
+public class OrderNumberProperties {
+
+    /**
+     * 当前节点编号，取值0~1023，多节点部署时每个节点必须不同
+     * 不配置时根据主机名和进程号计算
+     */
+    private Integer nodeId;
+
+}
@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-task")
+@Data
+public class OrderTaskProperties {
+
+    /**
+     * 订单定时任务每批查询和修改的订单数
+     */
+    private int chunkSize = 500;
+
+}
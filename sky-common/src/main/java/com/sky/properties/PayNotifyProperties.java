@@ -0,0 +1,37 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.pay-notify")
+@Data
+public class PayNotifyProperties {
+
+    /**
+     * 内存队列容量，队列满时事件留在回调事件表中由定时任务补处理
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * 处理线程数
+     */
+    private int workers = 2;
+
+    /**
+     * 每批最多处理的事件数
+     */
+    private int batchSize = 50;
+
+    /**
+     * 最大失败次数，超过后标记为处理失败不再重试
+     */
+    private int maxRetries = 10;
+
+    /**
+     * 待处理事件超过多少秒未更新时由定时任务重新入队
+     */
+    private int recoverAfterSeconds = 60;
+
+}
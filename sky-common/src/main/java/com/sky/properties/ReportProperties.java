@@ -0,0 +1,19 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 报表是否读取每日统计汇总表
+     * 关闭后直接按日期分组聚合订单表和用户表
+     * 汇总表需要先执行upgrade.sql中的回填语句，否则历史日期的统计为0，所以默认关闭
+     */
+    private boolean useRollup = false;
+
+}
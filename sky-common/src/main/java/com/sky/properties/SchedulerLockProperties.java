@@ -0,0 +1,23 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.scheduler-lock")
+@Data
+public class SchedulerLockProperties {
+
+    /**
+     * 是否启用定时任务锁，只部署一个节点时可以关闭
+     */
+    private boolean enabled = true;
+
+    /**
+     * 默认租约时间，单位毫秒，每隔三分之一租约时间续期一次
+     * 节点崩溃后最多经过一个租约时间，其他节点就能重新获得锁
+     */
+    private long leaseTime = 30000;
+
+}
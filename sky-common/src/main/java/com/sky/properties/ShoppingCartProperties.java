@@ -0,0 +1,34 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.shopping-cart")
+@Data
+public class ShoppingCartProperties {
+
+    /**
+     * 购物车存储方式
+     * database：直接读写购物车表
+     * redis：每个用户的购物车存放在redis哈希中
+     */
+    private String store = "database";
+
+    /**
+     * redis存储时是否异步回写购物车表
+     */
+    private boolean writeBehind = true;
+
+    /**
+     * 回写购物车表的间隔（毫秒）
+     */
+    private long flushDelay = 5000;
+
+    /**
+     * 每批回写的用户数
+     */
+    private int flushBatchSize = 100;
+
+}
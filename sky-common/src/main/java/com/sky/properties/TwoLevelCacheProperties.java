@@ -0,0 +1,28 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache")
+@Data
+public class TwoLevelCacheProperties {
+
+    /**
+     * 本地一级缓存配置
+     */
+    private long localMaximumSize = 10000; //每个缓存的最大条目数
+    private Duration localTtl = Duration.ofSeconds(60); //写入后的过期时间，兜底跨节点失效消息丢失的情况
+
+    /**
+     * redis二级缓存配置
+     */
+    private Duration defaultTtl = Duration.ofMinutes(30); //默认过期时间
+    private Map<String, Duration> ttl = new HashMap<>(); //按缓存名称单独设置的过期时间
+
+}
@@ -0,0 +1,42 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.wechat-mock")
+@Data
+public class WeChatMockProperties {
+
+    /**
+     * 是否启用微信接口模拟服务，只用于本地压测
+     */
+    private boolean enabled = false;
+
+    /**
+     * 模拟接口的固定延迟（毫秒）
+     */
+    private long latency = 50;
+
+    /**
+     * 在固定延迟之上增加的随机延迟上限（毫秒）
+     */
+    private long latencyJitter = 50;
+
+    /**
+     * 接口返回失败的概率，0~1
+     */
+    private double failureRate = 0;
+
+    /**
+     * 下单或退款后多久发送回调通知（毫秒）
+     */
+    private long notifyDelay = 1000;
+
+    /**
+     * 重复发送回调通知的概率，0~1，用于验证回调幂等
+     */
+    private double duplicateNotifyRate = 0;
+
+}
@@ -0,0 +1,37 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.wechat-pay-client")
+@Data
+public class WeChatPayClientProperties {
+
+    /**
+     * 调用微信支付接口的线程数
+     */
+    private int threads = 8;
+
+    /**
+     * 等待调用的请求队列容量，满了以后直接拒绝
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * 单次调用的超时时间（毫秒）
+     */
+    private long timeout = 10000;
+
+    /**
+     * 连续失败多少次后熔断
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * 熔断持续时间（毫秒），之后放行一个试探请求
+     */
+    private long openDuration = 30000;
+
+}
@@ -19,5 +19,9 @@ public class WeChatProperties {
     private String weChatPayCertFilePath; //平台证书
     private String notifyUrl; //支付成功的回调地址
     private String refundNotifyUrl; //退款成功的回调地址
+    private boolean autoUpdateCertificates = true; //是否自动下载并定期更新平台证书，失败时使用本地平台证书
+    private boolean verifyResponse = true; //是否校验微信支付响应的签名，只有pay-base-url指向/mock/wechat时才允许关闭，否则启动失败
+    private String payBaseUrl = "https://api.mch.weixin.qq.com"; //微信支付接口地址
+    private String loginBaseUrl = "https://api.weixin.qq.com"; //小程序登录接口地址
 
 }
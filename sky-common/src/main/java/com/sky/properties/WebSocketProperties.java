@@ -0,0 +1,47 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 每个连接待发送消息队列的容量，队列满说明客户端接收太慢，断开该连接
+     */
+    private int queueCapacity = 256;
+
+    /**
+     * 单条消息发送超时时间，单位毫秒，超时后断开该连接
+     */
+    private long sendTimeout = 5000;
+
+    /**
+     * 是否通过redis把消息转发到其他节点，只部署一个节点时可以关闭
+     */
+    private boolean clusterEnabled = true;
+
+    /**
+     * 节点间转发消息的redis频道
+     */
+    private String clusterChannel = "ws:broadcast";
+
+    /**
+     * 合并发送的等待时间，单位毫秒，这段时间内的消息合并为一条redis消息发布
+     */
+    private long coalesceDelay = 10;
+
+    /**
+     * 每条redis消息最多合并的消息数
+     */
+    private int coalesceMaxSize = 100;
+
+    /**
+     * 等待发布的消息队列容量，redis不可用时超出的消息只在本节点发送
+     */
+    private int clusterQueueCapacity = 10000;
+
+}
@@ -0,0 +1,59 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 熔断器：连续失败达到阈值后打开，打开期间直接拒绝调用
+ * 打开时间结束后只放行一个试探请求，成功则关闭，失败则重新打开
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private volatile long openUntil;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 是否允许本次调用，允许时调用结束后必须调用recordSuccess、recordFailure或release之一
+     * @return
+     */
+    public boolean allowRequest() {
+        if (failures.get() < failureThreshold) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntil) {
+            return false;
+        }
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    public void recordSuccess() {
+        failures.set(0);
+        trialInFlight.set(false);
+    }
+
+    public void recordFailure() {
+        if (failures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+        trialInFlight.set(false);
+    }
+
+    /**
+     * 调用没有真正发出时释放试探名额，不影响熔断状态
+     */
+    public void release() {
+        trialInFlight.set(false);
+    }
+
+    public boolean isOpen() {
+        return failures.get() >= failureThreshold && System.currentTimeMillis() < openUntil;
+    }
+}
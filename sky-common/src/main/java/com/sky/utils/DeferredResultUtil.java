@@ -0,0 +1,26 @@
+package com.sky.utils;
+
+import com.sky.result.Result;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 把CompletableFuture转换为DeferredResult，请求线程立即返回，结果就绪后再写回响应
+ * 异常交给全局异常处理器处理，和同步接口的返回格式一致
+ */
+public class DeferredResultUtil {
+
+    public static <T> DeferredResult<Result<T>> of(CompletableFuture<T> future) {
+        DeferredResult<Result<T>> deferredResult = new DeferredResult<>();
+        future.whenComplete((data, ex) -> {
+            if (ex == null) {
+                deferredResult.setResult(Result.success(data));
+            } else {
+                deferredResult.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+        return deferredResult;
+    }
+}
@@ -1,6 +1,7 @@
 package com.sky.utils;
 
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.HttpClientProperties;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -10,8 +11,11 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
@@ -19,13 +23,80 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Http工具类
+ * 所有请求共用一个带连接池的HttpClient，连接保持keep-alive复用，不再每次请求重新建立TCP和TLS连接
+ * 连接池参数由HttpClientConfiguration在启动时根据HttpClientProperties设置，未设置时使用默认值
  */
 public class HttpClientUtil {
 
-    static final  int TIMEOUT_MSEC = 5 * 1000;
+    private static volatile CloseableHttpClient httpClient;
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * 根据配置创建共享的HttpClient，替换之前创建的客户端
+     * @param properties
+     * @return
+     */
+    public static synchronized CloseableHttpClient init(HttpClientProperties properties) {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(properties.getMaxTotal());
+        manager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+        manager.setValidateAfterInactivity(properties.getValidateAfterInactivity());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+                .setSocketTimeout(properties.getSocketTimeout()).build();
+
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(manager)
+                .setDefaultRequestConfig(requestConfig)
+                // 服务端没有返回Keep-Alive头时使用配置的保持时间
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : properties.getKeepAlive();
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(properties.getMaxIdleTime(), TimeUnit.MILLISECONDS)
+                .build();
+
+        CloseableHttpClient old = httpClient;
+        httpClient = client;
+        connectionManager = manager;
+        if (old != null) {
+            try {
+                old.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 连接池使用情况：已借出、空闲、等待获取连接的请求数和最大连接数
+     * @return
+     */
+    public static PoolStats getPoolStats() {
+        getHttpClient();
+        return connectionManager.getTotalStats();
+    }
+
+    private static CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (HttpClientUtil.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = init(new HttpClientProperties());
+                }
+            }
+        }
+        return client;
+    }
 
     /**
      * 发送GET方式请求
@@ -34,9 +105,6 @@ public class HttpClientUtil {
      * @return
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
         String result = "";
         CloseableHttpResponse response = null;
 
@@ -53,7 +121,7 @@ public class HttpClientUtil {
             HttpGet httpGet = new HttpGet(uri);
 
             //发送请求
-            response = httpClient.execute(httpGet);
+            response = getHttpClient().execute(httpGet);
 
             //判断响应状态
             if(response.getStatusLine().getStatusCode() == 200){
@@ -62,12 +130,8 @@ public class HttpClientUtil {
         }catch (Exception e){
             e.printStackTrace();
         }finally {
-            try {
-                response.close();
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            //只关闭响应，连接归还连接池
+            close(response);
         }
 
         return result;
@@ -81,8 +145,6 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -101,20 +163,12 @@ public class HttpClientUtil {
                 httpPost.setEntity(entity);
             }
 
-            httpPost.setConfig(builderRequestConfig());
-
             // 执行http请求
-            response = httpClient.execute(httpPost);
+            response = getHttpClient().execute(httpPost);
 
             resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
         } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            close(response);
         }
 
         return resultString;
@@ -128,8 +182,6 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -151,29 +203,26 @@ public class HttpClientUtil {
                 httpPost.setEntity(entity);
             }
 
-            httpPost.setConfig(builderRequestConfig());
-
             // 执行http请求
-            response = httpClient.execute(httpPost);
+            response = getHttpClient().execute(httpPost);
 
             resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
         } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            close(response);
         }
 
         return resultString;
     }
-    private static RequestConfig builderRequestConfig() {
-        return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC)
-                .setConnectionRequestTimeout(TIMEOUT_MSEC)
-                .setSocketTimeout(TIMEOUT_MSEC).build();
+
+    private static void close(CloseableHttpResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            response.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 }
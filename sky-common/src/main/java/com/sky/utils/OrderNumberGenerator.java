@@ -0,0 +1,98 @@
+package com.sky.utils;
+
+import com.sky.properties.OrderNumberProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成器，雪花算法：41位毫秒时间戳 + 10位节点编号 + 12位毫秒内序号
+ * 时间戳和序号保存在同一个AtomicLong中，通过CAS递增，不加锁
+ * 同一毫秒内序号用完或时钟回拨时顺延到下一毫秒，保证单节点内严格递增
+ */
+@Component
+@Slf4j
+public class OrderNumberGenerator {
+
+    //起始时间 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+    private static final int NODE_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_ID_BITS) - 1;
+
+    @Autowired
+    private OrderNumberProperties orderNumberProperties;
+
+    private long nodeId;
+
+    //高位为相对EPOCH的毫秒数，低SEQUENCE_BITS位为序号
+    private final AtomicLong state = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Integer configured = orderNumberProperties.getNodeId();
+        if (configured != null) {
+            if (configured < 0 || configured > MAX_NODE_ID) {
+                throw new IllegalStateException("订单号节点编号必须在0~" + MAX_NODE_ID + "之间：" + configured);
+            }
+            nodeId = configured;
+        } else {
+            nodeId = defaultNodeId();
+            log.warn("未配置sky.order-number.node-id，根据主机名和进程号计算为{}，多节点部署时请显式配置", nodeId);
+        }
+    }
+
+    /**
+     * 生成订单号
+     * @return
+     */
+    public String nextNumber() {
+        return String.valueOf(nextId());
+    }
+
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH;
+        long next;
+        while (true) {
+            long last = state.get();
+            if (now > last >>> SEQUENCE_BITS) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                //同一毫秒或时钟回拨，在上一个值的基础上加一，序号溢出时自然进位到下一毫秒
+                next = last + 1;
+            }
+            if (state.compareAndSet(last, next)) {
+                break;
+            }
+        }
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_ID_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * 把id往前推一段时间，得到该时间点之前生成的id的上界
+     * @param id
+     * @param millis 毫秒数
+     * @return 不足时返回0
+     */
+    public static long rewind(long id, long millis) {
+        return Math.max(id - (millis << (NODE_ID_BITS + SEQUENCE_BITS)), 0);
+    }
+
+    private long defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        String name = host + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        return (name.hashCode() & Integer.MAX_VALUE) % (MAX_NODE_ID + 1);
+    }
+}
@@ -0,0 +1,131 @@
+package com.sky.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.WeChatPayClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 微信支付异步调用工具类
+ * 在独立的有界线程池中调用WeChatPayUtil，返回CompletableFuture，不占用请求线程
+ * 队列满时直接拒绝，超时未返回按失败处理，连续失败后熔断一段时间
+ */
+@Component
+@Slf4j
+public class WeChatPayAsyncUtil {
+
+    @Autowired
+    private WeChatPayUtil weChatPayUtil;
+    @Autowired
+    private WeChatPayClientProperties weChatPayClientProperties;
+
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService timer;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                weChatPayClientProperties.getThreads(),
+                weChatPayClientProperties.getThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(weChatPayClientProperties.getQueueCapacity()),
+                runnable -> new Thread(runnable, "wechat-pay-" + threadNumber.incrementAndGet()));
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wechat-pay-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        circuitBreaker = new CircuitBreaker(weChatPayClientProperties.getFailureThreshold(),
+                weChatPayClientProperties.getOpenDuration());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+        timer.shutdownNow();
+    }
+
+    /**
+     * 小程序支付
+     *
+     * @param orderNum    商户订单号
+     * @param total       金额，单位 元
+     * @param description 商品描述
+     * @param openid      微信用户的openid
+     * @return
+     */
+    public CompletableFuture<JSONObject> pay(String orderNum, BigDecimal total, String description, String openid) {
+        return submit(() -> {
+            JSONObject jsonObject = weChatPayUtil.pay(orderNum, total, description, openid);
+            // 网络异常等调用失败时WeChatPayUtil返回ERROR，计入熔断
+            if ("ERROR".equals(jsonObject.getString("code"))) {
+                throw new OrderBusinessException(MessageConstant.PAYMENT_UNAVAILABLE);
+            }
+            return jsonObject;
+        });
+    }
+
+    /**
+     * 申请退款
+     *
+     * @param outTradeNo    商户订单号
+     * @param outRefundNo   商户退款单号
+     * @param refund        退款金额
+     * @param total         原订单金额
+     * @return
+     */
+    public CompletableFuture<String> refund(String outTradeNo, String outRefundNo, BigDecimal refund, BigDecimal total) {
+        return submit(() -> weChatPayUtil.refund(outTradeNo, outRefundNo, refund, total));
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!circuitBreaker.allowRequest()) {
+            future.completeExceptionally(new OrderBusinessException(MessageConstant.PAYMENT_UNAVAILABLE));
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    T result = call.call();
+                    circuitBreaker.recordSuccess();
+                    future.complete(result);
+                } catch (Exception e) {
+                    log.error("调用微信支付接口失败", e);
+                    circuitBreaker.recordFailure();
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.release();
+            future.completeExceptionally(new OrderBusinessException(MessageConstant.PAYMENT_BUSY));
+            return future;
+        }
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (future.completeExceptionally(new OrderBusinessException(MessageConstant.PAYMENT_TIMEOUT))) {
+                log.warn("调用微信支付接口超时");
+            }
+        }, weChatPayClientProperties.getTimeout(), TimeUnit.MILLISECONDS);
+        future.whenComplete((result, ex) -> timeout.cancel(false));
+        return future;
+    }
+}
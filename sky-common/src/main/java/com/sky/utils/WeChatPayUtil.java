@@ -2,17 +2,27 @@ package com.sky.utils;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.HttpClientProperties;
 import com.sky.properties.WeChatProperties;
+import com.wechat.pay.contrib.apache.httpclient.Validator;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
+import com.wechat.pay.contrib.apache.httpclient.auth.PrivateKeySigner;
+import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
+import com.wechat.pay.contrib.apache.httpclient.auth.WechatPay2Credentials;
+import com.wechat.pay.contrib.apache.httpclient.auth.WechatPay2Validator;
+import com.wechat.pay.contrib.apache.httpclient.cert.CertificatesManager;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
@@ -20,58 +30,76 @@ import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * 微信支付工具类
  */
 @Component
+@Slf4j
 public class WeChatPayUtil {
 
-    //微信支付下单接口地址
-    public static final String JSAPI = "https://api.mch.weixin.qq.com/v3/pay/transactions/jsapi";
+    //微信支付下单接口路径，接口地址由sky.wechat.pay-base-url配置
+    public static final String JSAPI = "/v3/pay/transactions/jsapi";
 
-    //申请退款接口地址
-    public static final String REFUNDS = "https://api.mch.weixin.qq.com/v3/refund/domestic/refunds";
+    //申请退款接口路径
+    public static final String REFUNDS = "/v3/refund/domestic/refunds";
+
+    //模拟服务的接口路径，只有指向模拟服务时才允许关闭响应签名校验
+    private static final String MOCK_PATH = "/mock/wechat";
 
     @Autowired
     private WeChatProperties weChatProperties;
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    //签名客户端和商户私钥在首次使用时加载，之后所有请求共用，客户端内部使用连接池复用连接
+    private volatile CloseableHttpClient httpClient;
+    private volatile PrivateKey merchantPrivateKey;
 
     @PostConstruct
     public void init() {
+        // 误配置关闭签名校验会导致生产环境不校验微信支付的响应，直接启动失败
+        if (!weChatProperties.isVerifyResponse() && !isMockPayBaseUrl()) {
+            throw new IllegalStateException("sky.wechat.verify-response=false只能用于对接模拟服务，"
+                    + "当前sky.wechat.pay-base-url未指向" + MOCK_PATH + "：" + weChatProperties.getPayBaseUrl());
+        }
+        log.info("微信支付工具类初始化，私钥：{}，平台证书：{}",
+                weChatProperties.getPrivateKeyFilePath(), weChatProperties.getWeChatPayCertFilePath());
+        // 尝试初始化客户端，失败时在第一次调用时重试，不影响应用启动
         try {
-            System.out.println("=== 微信支付工具类初始化开始 ===");
-            System.out.println("当前工作目录: " + new File(".").getAbsolutePath());
-            
-            // 验证证书配置
-            String privateKeyPath = weChatProperties.getPrivateKeyFilePath();
-            String certPath = weChatProperties.getWeChatPayCertFilePath();
-            
-            System.out.println("私钥路径配置: " + privateKeyPath);
-            System.out.println("证书路径配置: " + certPath);
-            
-            // 尝试初始化客户端
-            CloseableHttpClient client = getClient();
-            if (client == null) {
-                System.err.println("!!! 警告：微信支付客户端初始化失败，支付功能可能无法正常工作 !!!");
-            } else {
-                System.out.println("微信支付客户端初始化成功");
-                client.close();
-            }
-            
-            System.out.println("=== 微信支付工具类初始化完成 ===");
+            getClient();
+            log.info("微信支付客户端初始化成功");
         } catch (Exception e) {
-            System.err.println("!!! 微信支付工具类初始化异常 !!!");
-            e.printStackTrace();
-            // 不抛出异常，允许应用继续启动
+            log.warn("微信支付客户端初始化失败，首次调用时重试", e);
+        }
+    }
+
+    /**
+     * 微信支付接口地址是否指向模拟服务
+     *
+     * @return
+     */
+    private boolean isMockPayBaseUrl() {
+        String payBaseUrl = weChatProperties.getPayBaseUrl();
+        return payBaseUrl != null && payBaseUrl.replaceAll("/+$", "").endsWith(MOCK_PATH);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        CloseableHttpClient client = httpClient;
+        if (client != null) {
+            client.close();
         }
     }
 
@@ -160,57 +188,143 @@ public class WeChatPayUtil {
     }
 
     /**
-     * 获取调用微信接口的客户端工具对象
+     * 获取调用微信接口的客户端工具对象，首次调用时创建，创建失败时下次调用重试
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        try {
-            String privateKeyPath = weChatProperties.getPrivateKeyFilePath();
-            String certPath = weChatProperties.getWeChatPayCertFilePath();
-            
-            System.out.println("开始加载证书文件...");
-            System.out.println("私钥路径: " + privateKeyPath);
-            System.out.println("证书路径: " + certPath);
-            
-            // 加载私钥
-            InputStream privateKeyStream = loadCertFile(privateKeyPath);
-            PrivateKey merchantPrivateKey = PemUtil.loadPrivateKey(privateKeyStream);
-            
-            // 加载证书
-            InputStream certStream = loadCertFile(certPath);
-            X509Certificate x509Certificate = PemUtil.loadCertificate(certStream);
-            
-            // 验证证书
-            if (merchantPrivateKey == null) {
-                throw new Exception("私钥加载失败");
+    private CloseableHttpClient getClient() throws Exception {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    client = createClient();
+                    httpClient = client;
+                }
             }
-            if (x509Certificate == null) {
-                throw new Exception("证书加载失败");
+        }
+        return client;
+    }
+
+    /**
+     * 加载商户私钥，只解析一次
+     *
+     * @return
+     */
+    private PrivateKey getMerchantPrivateKey() throws Exception {
+        PrivateKey privateKey = merchantPrivateKey;
+        if (privateKey == null) {
+            synchronized (this) {
+                privateKey = merchantPrivateKey;
+                if (privateKey == null) {
+                    String privateKeyPath = weChatProperties.getPrivateKeyFilePath();
+                    log.info("加载商户私钥：{}", privateKeyPath);
+                    try (InputStream privateKeyStream = loadCertFile(privateKeyPath)) {
+                        privateKey = PemUtil.loadPrivateKey(privateKeyStream);
+                    }
+                    if (privateKey == null) {
+                        throw new Exception("私钥加载失败");
+                    }
+                    merchantPrivateKey = privateKey;
+                }
             }
-            
-            // 验证证书有效期
-            try {
-                x509Certificate.checkValidity();
-            } catch (Exception e) {
-                throw new Exception("证书已过期或尚未生效: " + e.getMessage());
+        }
+        return privateKey;
+    }
+
+    /**
+     * 创建签名客户端
+     * 优先使用证书管理器自动下载平台证书，证书管理器会定期更新证书；失败时使用本地配置的平台证书
+     *
+     * @return
+     */
+    private CloseableHttpClient createClient() throws Exception {
+        PrivateKey privateKey = getMerchantPrivateKey();
+
+        WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), privateKey);
+
+        if (!weChatProperties.isVerifyResponse() && isMockPayBaseUrl()) {
+            // 对接模拟服务时响应没有微信支付平台的签名，不做校验
+            log.warn("已关闭微信支付响应签名校验，接口地址：{}", weChatProperties.getPayBaseUrl());
+            builder.withValidator(new Validator() {
+                public boolean validate(CloseableHttpResponse response) {
+                    return true;
+                }
+
+                public String getSerialNumber() {
+                    return "";
+                }
+            });
+        } else {
+            Verifier verifier = weChatProperties.isAutoUpdateCertificates() ? getAutoUpdateVerifier(privateKey) : null;
+            if (verifier != null) {
+                builder.withValidator(new WechatPay2Validator(verifier));
+            } else {
+                builder.withWechatPay(Arrays.asList(loadPlatformCertificate()));
             }
-            
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+        }
 
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(httpClientProperties.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(httpClientProperties.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(httpClientProperties.getValidateAfterInactivity());
+        builder.setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(httpClientProperties.getConnectTimeout())
+                        .setConnectionRequestTimeout(httpClientProperties.getConnectionRequestTimeout())
+                        .setSocketTimeout(httpClientProperties.getSocketTimeout()).build())
+                .evictExpiredConnections()
+                .evictIdleConnections(httpClientProperties.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+
+        log.info("证书加载成功，创建微信支付客户端");
+        return builder.build();
+    }
 
-            System.out.println("证书加载成功，创建HttpClient实例");
-            return builder.build();
+    /**
+     * 通过证书管理器获取平台证书验证器，证书管理器后台定期下载新的平台证书
+     *
+     * @param privateKey
+     * @return 获取失败时返回null
+     */
+    private Verifier getAutoUpdateVerifier(PrivateKey privateKey) {
+        try {
+            String mchid = weChatProperties.getMchid();
+            CertificatesManager certificatesManager = CertificatesManager.getInstance();
+            certificatesManager.putMerchant(mchid,
+                    new WechatPay2Credentials(mchid, new PrivateKeySigner(weChatProperties.getMchSerialNo(), privateKey)),
+                    weChatProperties.getApiV3Key().getBytes(StandardCharsets.UTF_8));
+            return certificatesManager.getVerifier(mchid);
         } catch (Exception e) {
-            System.err.println("获取微信支付客户端失败: " + e.getMessage());
-            e.printStackTrace();
+            log.warn("自动获取平台证书失败，使用本地平台证书：{}", e.getMessage());
             return null;
         }
     }
 
+    /**
+     * 加载本地配置的平台证书
+     *
+     * @return
+     */
+    private X509Certificate loadPlatformCertificate() throws Exception {
+        String certPath = weChatProperties.getWeChatPayCertFilePath();
+        log.info("加载平台证书：{}", certPath);
+        X509Certificate x509Certificate;
+        try (InputStream certStream = loadCertFile(certPath)) {
+            x509Certificate = PemUtil.loadCertificate(certStream);
+        }
+        if (x509Certificate == null) {
+            throw new Exception("证书加载失败");
+        }
+        // 验证证书有效期
+        try {
+            x509Certificate.checkValidity();
+        } catch (Exception e) {
+            throw new Exception("证书已过期或尚未生效: " + e.getMessage());
+        }
+        return x509Certificate;
+    }
+
     /**
      * 发送post方式请求
      *
@@ -220,9 +334,6 @@ public class WeChatPayUtil {
      */
     private String post(String url, String body) throws Exception {
         CloseableHttpClient httpClient = getClient();
-        if (httpClient == null) {
-            throw new Exception("无法创建微信支付客户端，请检查证书配置");
-        }
 
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
@@ -239,7 +350,7 @@ public class WeChatPayUtil {
             System.out.println("收到响应: " + bodyAsString);
             return bodyAsString;
         } finally {
-            httpClient.close();
+            //只关闭响应，连接归还连接池
             response.close();
         }
     }
@@ -263,7 +374,7 @@ public class WeChatPayUtil {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
         } finally {
-            httpClient.close();
+            //只关闭响应，连接归还连接池
             response.close();
         }
     }
@@ -297,7 +408,7 @@ public class WeChatPayUtil {
         jsonObject.put("payer", payer);
 
         String body = jsonObject.toJSONString();
-        return post(JSAPI, body);
+        return post(weChatProperties.getPayBaseUrl() + JSAPI, body);
     }
 
     /**
@@ -340,7 +451,7 @@ public class WeChatPayUtil {
 
                 System.out.println("开始进行签名...");
                 Signature signature = Signature.getInstance("SHA256withRSA");
-                signature.initSign(PemUtil.loadPrivateKey(loadCertFile(weChatProperties.getPrivateKeyFilePath())));
+                signature.initSign(getMerchantPrivateKey());
                 signature.update(message);
                 String packageSign = Base64.getEncoder().encodeToString(signature.sign());
                 System.out.println("签名完成");
@@ -390,6 +501,6 @@ public class WeChatPayUtil {
         String body = jsonObject.toJSONString();
 
         //调用申请退款接口
-        return post(REFUNDS, body);
+        return post(weChatProperties.getPayBaseUrl() + REFUNDS, body);
     }
 }
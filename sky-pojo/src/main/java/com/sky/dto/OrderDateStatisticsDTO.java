@@ -0,0 +1,28 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OrderDateStatisticsDTO implements Serializable {
+    //下单日期
+    private LocalDate orderDate;
+
+    //订单状态
+    private Integer status;
+
+    //订单数量
+    private Integer orderCount;
+
+    //订单总金额
+    private BigDecimal amount;
+}
@@ -0,0 +1,38 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日订单统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyOrderStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //统计日期（下单日期）
+    private LocalDate statDate;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数（已完成）
+    private Integer validOrderCount;
+
+    //营业额（已完成订单金额）
+    private BigDecimal turnover;
+
+    //更新时间
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,31 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日用户统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyUserStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //统计日期（注册日期）
+    private LocalDate statDate;
+
+    //新增用户数
+    private Integer newUserCount;
+
+    //更新时间
+    private LocalDateTime updateTime;
+}
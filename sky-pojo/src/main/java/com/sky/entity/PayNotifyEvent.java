@@ -0,0 +1,55 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 支付回调事件
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayNotifyEvent implements Serializable {
+
+    /**
+     * 事件类型 1支付成功 2退款成功
+     */
+    public static final Integer PAY_SUCCESS = 1;
+    public static final Integer REFUND_SUCCESS = 2;
+
+    /**
+     * 处理状态 0待处理 1已处理 2处理失败
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer DONE = 1;
+    public static final Integer FAILED = 2;
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //事件类型
+    private Integer type;
+
+    //去重标识：微信支付交易号或退款单号
+    private String notifyKey;
+
+    //商户订单号
+    private String outTradeNo;
+
+    //处理状态
+    private Integer status;
+
+    //处理失败次数
+    private Integer retryCount;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,20 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//自定义注解，用于标识定时任务在多个节点中同一时间只由一个节点执行
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SchedulerLock {
+    //锁名称，同名的任务互斥
+    String value();
+
+    //锁的租约时间，单位毫秒，任务执行期间自动续期，0表示使用sky.scheduler-lock.lease-time
+    long leaseTime() default 0;
+
+    //执行结束后锁至少保留的时间，单位毫秒，避免系统时间有偏差的节点在任务结束后再执行一次同一轮cron任务
+    long minHoldTime() default 0;
+}
@@ -0,0 +1,178 @@
+package com.sky.aspect;
+
+import com.sky.annotation.SchedulerLock;
+import com.sky.properties.SchedulerLockProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自定义切面，实现定时任务的分布式锁
+ * 执行带有@SchedulerLock的方法前用redis的SET NX PX获取锁，获取不到说明其他节点正在执行，本次跳过
+ * 执行期间由续期线程定期延长租约，执行结束后只删除自己持有的锁
+ */
+@Slf4j
+@Aspect
+@Component
+public class SchedulerLockAspect {
+
+    private static final String KEY_PREFIX = "scheduler:lock:";
+
+    //锁仍由自己持有时延长租约
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0", Long.class);
+    //锁仍由自己持有时删除，需要继续保留ARGV[2]毫秒时只修改过期时间
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "if tonumber(ARGV[2]) > 0 then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return redis.call('DEL', KEYS[1])", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SchedulerLockProperties schedulerLockProperties;
+
+    private final Map<String, JobStats> stats = new ConcurrentHashMap<>();
+    private ScheduledExecutorService renewer;
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduler-lock-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        nodeId = host + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewer.shutdownNow();
+    }
+
+    @Around("@annotation(schedulerLock)")
+    public Object lock(ProceedingJoinPoint joinPoint, SchedulerLock schedulerLock) throws Throwable {
+        if (!schedulerLockProperties.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        String name = schedulerLock.value();
+        JobStats jobStats = stats.computeIfAbsent(name, key -> new JobStats());
+        long leaseTime = schedulerLock.leaseTime() > 0 ? schedulerLock.leaseTime() : schedulerLockProperties.getLeaseTime();
+        String key = KEY_PREFIX + name;
+        String token = nodeId + ":" + Thread.currentThread().getId();
+
+        Boolean acquired;
+        try {
+            acquired = stringRedisTemplate.opsForValue().setIfAbsent(key, token, leaseTime, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // redis不可用时不执行，避免所有节点同时执行
+            log.error("获取定时任务锁{}失败，本次跳过", name, e);
+            jobStats.skipped.incrementAndGet();
+            return null;
+        }
+        if (!Boolean.TRUE.equals(acquired)) {
+            log.debug("定时任务{}正在其他节点执行，本次跳过", name);
+            jobStats.skipped.incrementAndGet();
+            return null;
+        }
+
+        jobStats.executed.incrementAndGet();
+        AtomicBoolean lost = new AtomicBoolean();
+        long period = Math.max(leaseTime / 3, 1);
+        ScheduledFuture<?> renewal = renewer.scheduleAtFixedRate(() -> {
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                        token, String.valueOf(leaseTime));
+                if (renewed == null || renewed == 0) {
+                    if (lost.compareAndSet(false, true)) {
+                        log.warn("定时任务{}的锁已失效，其他节点可能同时执行", name);
+                        jobStats.lost.incrementAndGet();
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("定时任务{}的锁续期失败", name, e);
+                jobStats.renewFailed.incrementAndGet();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+
+        long start = System.currentTimeMillis();
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            jobStats.failed.incrementAndGet();
+            throw e;
+        } finally {
+            renewal.cancel(false);
+            long duration = System.currentTimeMillis() - start;
+            jobStats.totalDuration.addAndGet(duration);
+            jobStats.maxDuration.accumulateAndGet(duration, Math::max);
+            try {
+                long hold = schedulerLock.minHoldTime() - duration;
+                stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(key), token,
+                        String.valueOf(Math.max(hold, 0)));
+            } catch (Exception e) {
+                log.warn("释放定时任务{}的锁失败，等待租约到期", name, e);
+            }
+        }
+    }
+
+    /**
+     * 定时输出各个任务在本节点的执行情况
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logStats() {
+        stats.forEach((name, jobStats) -> {
+            long executed = jobStats.executed.getAndSet(0);
+            long skipped = jobStats.skipped.getAndSet(0);
+            long failed = jobStats.failed.getAndSet(0);
+            long lost = jobStats.lost.getAndSet(0);
+            long renewFailed = jobStats.renewFailed.getAndSet(0);
+            long totalDuration = jobStats.totalDuration.getAndSet(0);
+            long maxDuration = jobStats.maxDuration.getAndSet(0);
+            if (executed + skipped == 0) {
+                return;
+            }
+            log.info("定时任务{}：执行{}次，跳过{}次，失败{}次，锁失效{}次，续期失败{}次，平均耗时{}ms，最大耗时{}ms",
+                    name, executed, skipped, failed, lost, renewFailed,
+                    executed == 0 ? 0 : totalDuration / executed, maxDuration);
+        });
+    }
+
+    private static class JobStats {
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong lost = new AtomicLong();
+        private final AtomicLong renewFailed = new AtomicLong();
+        private final AtomicLong totalDuration = new AtomicLong();
+        private final AtomicLong maxDuration = new AtomicLong();
+    }
+}
@@ -0,0 +1,125 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 两级缓存：一级为进程内的Caffeine缓存，二级为redis缓存
+ * 读取时先查一级缓存，未命中再查二级缓存并回填一级缓存；
+ * 写入和删除时同时操作两级缓存，并通知其他节点删除各自的一级缓存
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    //一级缓存，key统一转为字符串，便于跨节点按key失效
+    private final Cache<String, Object> localCache;
+    //二级缓存
+    private final org.springframework.cache.Cache redisCache;
+    private final TwoLevelCacheManager cacheManager;
+
+    public TwoLevelCache(String name, Cache<String, Object> localCache,
+                         org.springframework.cache.Cache redisCache, TwoLevelCacheManager cacheManager) {
+        super(true);
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = String.valueOf(key);
+        Object value = localCache.getIfPresent(localKey);
+        if (value != null) {
+            return value;
+        }
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper == null) {
+            return null;
+        }
+        value = toStoreValue(wrapper.get());
+        localCache.put(localKey, value);
+        return value;
+    }
+
+    /**
+     * 一级缓存未命中时通过Caffeine按key加锁加载，同一个key只加载一次，不同key的加载互不阻塞
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = String.valueOf(key);
+        Object value = localCache.get(localKey, k -> {
+            ValueWrapper wrapper = redisCache.get(key);
+            if (wrapper != null) {
+                return toStoreValue(wrapper.get());
+            }
+            T loaded;
+            try {
+                loaded = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            redisCache.put(key, loaded);
+            cacheManager.publishEvict(name, localKey);
+            return toStoreValue(loaded);
+        });
+        return (T) fromStoreValue(value);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        String localKey = String.valueOf(key);
+        localCache.put(localKey, toStoreValue(value));
+        cacheManager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        String localKey = String.valueOf(key);
+        localCache.invalidate(localKey);
+        cacheManager.publishEvict(name, localKey);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        String localKey = String.valueOf(key);
+        localCache.invalidate(localKey);
+        cacheManager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        cacheManager.publishEvict(name, null);
+    }
+
+    /**
+     * 只删除本节点的一级缓存，收到其他节点的失效通知时调用
+     * @param localKey 为空时清空整个一级缓存
+     */
+    public void evictLocal(String localKey) {
+        if (localKey == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(localKey);
+        }
+    }
+}
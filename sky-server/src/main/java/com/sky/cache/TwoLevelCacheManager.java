@@ -0,0 +1,92 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.TwoLevelCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 两级缓存管理器，按缓存名称创建TwoLevelCache
+ * 一级缓存的变更通过redis发布订阅通知到其他节点
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    //一级缓存失效通知的频道
+    public static final String EVICT_CHANNEL = "cache:evict";
+
+    //当前节点标识，收到自己发出的通知时忽略
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TwoLevelCacheProperties properties;
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, StringRedisTemplate stringRedisTemplate,
+                                TwoLevelCacheProperties properties) {
+        this.redisCacheManager = redisCacheManager;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = properties;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return cacheMap.computeIfAbsent(name, cacheName -> new TwoLevelCache(
+                cacheName,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.getLocalMaximumSize())
+                        .expireAfterWrite(properties.getLocalTtl())
+                        .build(),
+                redisCacheManager.getCache(cacheName),
+                this));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    /**
+     * 通知其他节点删除一级缓存
+     * @param cacheName
+     * @param key 为空时清空整个缓存
+     */
+    public void publishEvict(String cacheName, String key) {
+        JSONObject message = new JSONObject();
+        message.put("nodeId", nodeId);
+        message.put("cacheName", cacheName);
+        message.put("key", key);
+        try {
+            stringRedisTemplate.convertAndSend(EVICT_CHANNEL, message.toJSONString());
+        } catch (Exception e) {
+            // 通知失败时其他节点的一级缓存会在过期后自动失效
+            log.error("发送缓存失效通知失败：{}", message, e);
+        }
+    }
+
+    /**
+     * 处理其他节点发来的失效通知，删除本节点的一级缓存
+     * @param body
+     */
+    public void handleEvict(String body) {
+        JSONObject message = JSON.parseObject(body);
+        if (nodeId.equals(message.getString("nodeId"))) {
+            return;
+        }
+        TwoLevelCache cache = cacheMap.get(message.getString("cacheName"));
+        if (cache != null) {
+            cache.evictLocal(message.getString("key"));
+        }
+    }
+}
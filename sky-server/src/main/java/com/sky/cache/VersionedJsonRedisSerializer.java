@@ -0,0 +1,89 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.sky.json.JacksonObjectMapper;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+/**
+ * redis值序列化器，以json格式保存对象，并在数据前加一个字节的版本号
+ * 版本号用于以后更换数据格式时兼容旧数据；
+ * 旧的JDK序列化数据不再反序列化（可以被利用执行任意代码），读取时按缓存未命中处理，重新加载后会被覆盖
+ */
+public class VersionedJsonRedisSerializer implements RedisSerializer<Object> {
+
+    //空值占位，对应缓存中的NullValue
+    private static final byte VERSION_NULL = 0;
+    //json格式
+    private static final byte VERSION_JSON = 1;
+    //JDK序列化数据的首字节
+    private static final byte JDK_STREAM_MAGIC = (byte) 0xAC;
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final ObjectMapper objectMapper;
+
+    public VersionedJsonRedisSerializer() {
+        //沿用项目统一的日期时间格式
+        objectMapper = new JacksonObjectMapper();
+        //记录对象的类型信息，读取时还原为原来的类型
+        //只允许还原项目自己的类和jdk的集合、数字、日期类型，防止写入redis的数据指定任意类反序列化
+        PolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.sky.")
+                .allowIfSubType("java.util.")
+                .allowIfSubType("java.math.")
+                .allowIfSubType("java.time.")
+                .build();
+        objectMapper.activateDefaultTyping(typeValidator,
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        if (value instanceof NullValue) {
+            return new byte[]{VERSION_NULL};
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            byte[] bytes = new byte[json.length + 1];
+            bytes[0] = VERSION_JSON;
+            System.arraycopy(json, 0, bytes, 1, json.length);
+            return bytes;
+        } catch (Exception e) {
+            throw new SerializationException("redis值序列化失败：" + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        switch (bytes[0]) {
+            case VERSION_NULL:
+                return NullValue.INSTANCE;
+            case VERSION_JSON:
+                try {
+                    return objectMapper.readValue(Arrays.copyOfRange(bytes, 1, bytes.length), Object.class);
+                } catch (Exception e) {
+                    throw new SerializationException("redis值反序列化失败", e);
+                }
+            case JDK_STREAM_MAGIC:
+                //升级前的JDK序列化数据，当作不存在
+                return null;
+            default:
+                throw new SerializationException("未知的redis数据版本：" + bytes[0]);
+        }
+    }
+}
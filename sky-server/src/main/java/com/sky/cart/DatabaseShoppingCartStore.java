@@ -0,0 +1,56 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 直接读写购物车表的购物车存储
+ * 数量的增减都是单条原子语句，不再先查询再修改
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.shopping-cart", name = "store", havingValue = "database", matchIfMissing = true)
+public class DatabaseShoppingCartStore implements ShoppingCartStore {
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = ShoppingCart.builder().userId(userId).build();
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    public boolean increment(ShoppingCart shoppingCart) {
+        return shoppingCartMapper.incrementNumber(shoppingCart) > 0;
+    }
+
+    public void add(ShoppingCart shoppingCart) {
+        // 并发添加同一商品时由唯一索引合并为一条记录
+        shoppingCartMapper.upsertIncrement(shoppingCart);
+    }
+
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        if (shoppingCartList == null || shoppingCartList.isEmpty()) {
+            return;
+        }
+        shoppingCartMapper.upsertIncrementBatch(shoppingCartList);
+    }
+
+    /**
+     * 先减一再删除数量为零的记录，减一时加的行锁持有到事务结束，并发的添加会等待删除完成
+     * @param shoppingCart
+     */
+    @Transactional
+    public void decrement(ShoppingCart shoppingCart) {
+        shoppingCartMapper.decrementNumber(shoppingCart);
+        shoppingCartMapper.deleteEmpty(shoppingCart);
+    }
+
+    public void clean(Long userId) {
+        shoppingCartMapper.deleleByUserId(userId);
+    }
+}
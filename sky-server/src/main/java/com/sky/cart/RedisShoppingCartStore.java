@@ -0,0 +1,273 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * redis购物车存储
+ * 每个用户两个哈希：cart:count:{userId}保存商品数量，cart:item:{userId}保存商品名称、图片、金额等信息
+ * 哈希字段为菜品id+口味或套餐id，数量用HINCRBY原子增减
+ * 开启回写时修改过的用户记入cart:dirty，由ShoppingCartFlushTask定时写回购物车表
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.shopping-cart", name = "store", havingValue = "redis")
+@Slf4j
+public class RedisShoppingCartStore implements ShoppingCartStore {
+
+    private static final String COUNT_KEY_PREFIX = "cart:count:";
+    private static final String ITEM_KEY_PREFIX = "cart:item:";
+    //标记该用户的购物车已从购物车表加载到redis
+    private static final String LOADED_KEY_PREFIX = "cart:loaded:";
+    //待回写购物车表的用户id集合
+    private static final String DIRTY_KEY = "cart:dirty";
+
+    //商品已在购物车中时数量加一，返回加一后的数量，不在时返回0
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 0 then return 0 end " +
+            "return redis.call('HINCRBY', KEYS[1], ARGV[1], 1)", Long.class);
+
+    //数量减一，减到零时同时删除数量和商品信息
+    private static final DefaultRedisScript<Long> DECREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local number = redis.call('HINCRBY', KEYS[1], ARGV[1], -1) " +
+            "if number <= 0 then " +
+            "redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "end " +
+            "return number", Long.class);
+
+    //未加载过时写入从购物车表读出的数据并标记为已加载，已加载时不做任何修改
+    //ARGV[1]为商品数，之后每个商品依次为字段、数量、商品信息
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "for i = 0, tonumber(ARGV[1]) - 1 do " +
+            "redis.call('HSETNX', KEYS[2], ARGV[i * 3 + 2], ARGV[i * 3 + 3]) " +
+            "redis.call('HSETNX', KEYS[3], ARGV[i * 3 + 2], ARGV[i * 3 + 4]) " +
+            "end " +
+            "redis.call('SET', KEYS[1], '1') " +
+            "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+
+    public List<ShoppingCart> list(Long userId) {
+        ensureLoaded(userId);
+        return read(userId);
+    }
+
+    public boolean increment(ShoppingCart shoppingCart) {
+        Long userId = shoppingCart.getUserId();
+        ensureLoaded(userId);
+        Long number = stringRedisTemplate.execute(INCREMENT_SCRIPT,
+                Arrays.asList(countKey(userId), itemKey(userId)), field(shoppingCart));
+        if (number == null || number == 0) {
+            return false;
+        }
+        markDirty(userId);
+        return true;
+    }
+
+    public void add(ShoppingCart shoppingCart) {
+        Long userId = shoppingCart.getUserId();
+        ensureLoaded(userId);
+        put(shoppingCart);
+        markDirty(userId);
+    }
+
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        if (shoppingCartList == null || shoppingCartList.isEmpty()) {
+            return;
+        }
+        shoppingCartList.stream().map(ShoppingCart::getUserId).distinct().forEach(this::ensureLoaded);
+        shoppingCartList.forEach(this::put);
+        shoppingCartList.stream().map(ShoppingCart::getUserId).distinct().forEach(this::markDirty);
+    }
+
+    public void decrement(ShoppingCart shoppingCart) {
+        Long userId = shoppingCart.getUserId();
+        ensureLoaded(userId);
+        stringRedisTemplate.execute(DECREMENT_SCRIPT,
+                Arrays.asList(countKey(userId), itemKey(userId)), field(shoppingCart));
+        markDirty(userId);
+    }
+
+    public void clean(Long userId) {
+        // 在下单事务中调用时等事务提交后再清空，事务回滚时购物车保持不变
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doClean(userId);
+                }
+            });
+        } else {
+            doClean(userId);
+        }
+    }
+
+    private void doClean(Long userId) {
+        redisTemplate.delete(Arrays.asList(countKey(userId), itemKey(userId)));
+        if (shoppingCartProperties.isWriteBehind()) {
+            // 购物车表中的旧数据等回写时删除，这里直接标记为已加载，避免再被加载回来
+            stringRedisTemplate.opsForValue().set(LOADED_KEY_PREFIX + userId, "1");
+            markDirty(userId);
+        }
+    }
+
+    /**
+     * 取出一批待回写的用户id
+     * @param count
+     * @return
+     */
+    public List<Long> popDirtyUsers(int count) {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, count);
+        if (userIds == null) {
+            return new ArrayList<>();
+        }
+        return userIds.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 重新标记为待回写，回写失败时调用
+     * @param userId
+     */
+    public void markDirty(Long userId) {
+        if (shoppingCartProperties.isWriteBehind()) {
+            stringRedisTemplate.opsForSet().add(DIRTY_KEY, userId.toString());
+        }
+    }
+
+    /**
+     * 用redis中的购物车覆盖购物车表中该用户的数据
+     * @param userId
+     */
+    @Transactional
+    public void flush(Long userId) {
+        List<ShoppingCart> list = read(userId);
+        shoppingCartMapper.deleleByUserId(userId);
+        if (!list.isEmpty()) {
+            shoppingCartMapper.insertBatch(list);
+        }
+    }
+
+    /**
+     * 开启回写时，redis中没有该用户的购物车则从购物车表加载，保证redis数据丢失后不会覆盖表中的数据
+     * @param userId
+     */
+    private void ensureLoaded(Long userId) {
+        if (!shoppingCartProperties.isWriteBehind()) {
+            return;
+        }
+        String loadedKey = LOADED_KEY_PREFIX + userId;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(loadedKey))) {
+            return;
+        }
+        ShoppingCart query = ShoppingCart.builder().userId(userId).build();
+        List<ShoppingCart> list = shoppingCartMapper.list(query);
+        Map<String, ShoppingCart> items = new LinkedHashMap<>();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        if (list != null) {
+            for (ShoppingCart cart : list) {
+                String field = field(cart);
+                items.putIfAbsent(field, snapshot(cart));
+                counts.merge(field, cart.getNumber(), Integer::sum);
+            }
+        }
+        // 并发的首次请求都会读取购物车表，但只有一个能写入，写入和标记已加载在同一个脚本中完成，
+        // 其他请求看到已加载时数据一定已写入，不会覆盖已经累加的数量
+        RedisSerializer valueSerializer = redisTemplate.getHashValueSerializer();
+        List<byte[]> args = new ArrayList<>();
+        args.add(bytes(String.valueOf(items.size())));
+        items.forEach((field, item) -> {
+            args.add(bytes(field));
+            args.add(bytes(String.valueOf(counts.get(field))));
+            args.add(valueSerializer.serialize(item));
+        });
+        Long loaded = stringRedisTemplate.execute(LOAD_SCRIPT, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class),
+                Arrays.asList(loadedKey, countKey(userId), itemKey(userId)), args.toArray());
+        if (loaded != null && loaded == 1 && !items.isEmpty()) {
+            log.info("从购物车表加载用户{}的购物车，共{}条", userId, items.size());
+        }
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<ShoppingCart> read(Long userId) {
+        Map<Object, Object> counts = stringRedisTemplate.opsForHash().entries(countKey(userId));
+        List<ShoppingCart> list = new ArrayList<>();
+        if (counts.isEmpty()) {
+            return list;
+        }
+        Map<Object, Object> items = redisTemplate.opsForHash().entries(itemKey(userId));
+        counts.forEach((field, number) -> {
+            ShoppingCart cart = (ShoppingCart) items.get(field);
+            if (cart != null) {
+                cart.setNumber(Integer.valueOf(number.toString()));
+                list.add(cart);
+            }
+        });
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        return list;
+    }
+
+    // 先写商品信息再累加数量，读到数量时商品信息一定已存在
+    private void put(ShoppingCart shoppingCart) {
+        Long userId = shoppingCart.getUserId();
+        String field = field(shoppingCart);
+        redisTemplate.opsForHash().putIfAbsent(itemKey(userId), field, snapshot(shoppingCart));
+        stringRedisTemplate.opsForHash().increment(countKey(userId), field, shoppingCart.getNumber());
+    }
+
+    // 商品信息中不保存id和数量，数量以数量哈希为准
+    private ShoppingCart snapshot(ShoppingCart shoppingCart) {
+        ShoppingCart cart = new ShoppingCart();
+        BeanUtils.copyProperties(shoppingCart, cart, "id", "number");
+        return cart;
+    }
+
+    private String field(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            String flavor = shoppingCart.getDishFlavor() == null ? "" : shoppingCart.getDishFlavor();
+            return "dish:" + shoppingCart.getDishId() + ":" + flavor;
+        }
+        return "setmeal:" + shoppingCart.getSetmealId();
+    }
+
+    private String countKey(Long userId) {
+        return COUNT_KEY_PREFIX + userId;
+    }
+
+    private String itemKey(Long userId) {
+        return ITEM_KEY_PREFIX + userId;
+    }
+}
@@ -0,0 +1,49 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车存储，根据sky.shopping-cart.store选择数据库或redis实现
+ */
+public interface ShoppingCartStore {
+
+    /**
+     * 查询用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 购物车中已有该商品时数量加一
+     * @param shoppingCart 用户id、菜品id或套餐id、口味
+     * @return 购物车中没有该商品时返回false，不做任何修改
+     */
+    boolean increment(ShoppingCart shoppingCart);
+
+    /**
+     * 添加商品到购物车，数量为shoppingCart.number
+     * @param shoppingCart
+     */
+    void add(ShoppingCart shoppingCart);
+
+    /**
+     * 批量添加商品到购物车
+     * @param shoppingCartList
+     */
+    void addBatch(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 商品数量减一，减到零时删除该商品
+     * @param shoppingCart 用户id、菜品id或套餐id、口味
+     */
+    void decrement(ShoppingCart shoppingCart);
+
+    /**
+     * 清空用户的购物车
+     * @param userId
+     */
+    void clean(Long userId);
+}
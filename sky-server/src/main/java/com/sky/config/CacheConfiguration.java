@@ -0,0 +1,61 @@
+package com.sky.config;
+
+import com.sky.cache.TwoLevelCacheManager;
+import com.sky.properties.TwoLevelCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 配置类，创建两级缓存管理器
+ */
+@Configuration
+@Slf4j
+public class CacheConfiguration {
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                             StringRedisTemplate stringRedisTemplate,
+                                             TwoLevelCacheProperties twoLevelCacheProperties,
+                                             RedisSerializer<Object> redisValueSerializer) {
+        log.info("开始创建两级缓存管理器：{}", twoLevelCacheProperties);
+        //redis二级缓存默认配置
+        RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(twoLevelCacheProperties.getDefaultTtl())
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(redisValueSerializer));
+        //按缓存名称单独设置过期时间
+        Map<String, RedisCacheConfiguration> cacheConfigs = new HashMap<>();
+        twoLevelCacheProperties.getTtl().forEach((cacheName, ttl) -> cacheConfigs.put(cacheName, defaultConfig.entryTtl(ttl)));
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
+                .cacheDefaults(defaultConfig)
+                .withInitialCacheConfigurations(cacheConfigs)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return new TwoLevelCacheManager(redisCacheManager, stringRedisTemplate, twoLevelCacheProperties);
+    }
+
+    /**
+     * 订阅一级缓存失效通知，注册到共用的redis消息订阅容器
+     */
+    @Bean
+    public MessageListener cacheEvictListener(RedisMessageListenerContainer redisMessageListenerContainer,
+                                              TwoLevelCacheManager cacheManager) {
+        MessageListener listener = (message, pattern) ->
+                cacheManager.handleEvict(new String(message.getBody(), StandardCharsets.UTF_8));
+        redisMessageListenerContainer.addMessageListener(listener, new ChannelTopic(TwoLevelCacheManager.EVICT_CHANNEL));
+        return listener;
+    }
+}
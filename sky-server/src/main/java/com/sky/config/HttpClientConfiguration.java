@@ -0,0 +1,21 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//配置类，用于初始化HttpClientUtil共享的连接池
+@Slf4j
+@Configuration
+public class HttpClientConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(HttpClientProperties httpClientProperties) {
+        log.info("开始创建共享http客户端：{}", httpClientProperties);
+        return HttpClientUtil.init(httpClientProperties);
+    }
+
+}
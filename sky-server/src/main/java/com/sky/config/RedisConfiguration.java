@@ -1,9 +1,12 @@
 package com.sky.config;
 
+import com.sky.cache.VersionedJsonRedisSerializer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -11,13 +14,39 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class RedisConfiguration {
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisSerializer<Object> redisValueSerializer) {
         log.info("开始创建redis模板对象");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置Redis连接工厂
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置Redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        //设置Redis value的序列化器
+        redisTemplate.setValueSerializer(redisValueSerializer);
+        redisTemplate.setHashValueSerializer(redisValueSerializer);
         return redisTemplate;
     }
+
+    /**
+     * Redis value的序列化器，redis模板和缓存共用
+     * 更换序列化方式时替换这个bean即可
+     * @return
+     */
+    @Bean
+    public RedisSerializer<Object> redisValueSerializer() {
+        return new VersionedJsonRedisSerializer();
+    }
+
+    /**
+     * Redis消息订阅容器，各个组件自行注册监听的频道
+     * @param redisConnectionFactory
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
 }
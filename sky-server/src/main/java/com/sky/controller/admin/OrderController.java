@@ -8,6 +8,7 @@ import com.sky.entity.Orders;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
+import com.sky.utils.DeferredResultUtil;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderVO;
@@ -16,6 +17,7 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 /**
  * 订单管理
@@ -82,9 +84,8 @@ public class OrderController {
      */
     @PutMapping("/rejection")
     @ApiOperation("拒单")
-    public Result rejection(@RequestBody OrdersRejectionDTO ordersRejectionDTO) throws Exception {
-        orderService.rejection(ordersRejectionDTO);
-        return Result.success();
+    public DeferredResult<Result<Void>> rejection(@RequestBody OrdersRejectionDTO ordersRejectionDTO) {
+        return DeferredResultUtil.of(orderService.rejection(ordersRejectionDTO));
     }
 
     /**
@@ -95,9 +96,8 @@ public class OrderController {
      */
     @PutMapping("/cancel")
     @ApiOperation("取消订单")
-    public Result cancel(@RequestBody OrdersCancelDTO ordersCancelDTO) throws Exception {
-        orderService.cancel(ordersCancelDTO);
-        return Result.success();
+    public DeferredResult<Result<Void>> cancel(@RequestBody OrdersCancelDTO ordersCancelDTO) {
+        return DeferredResultUtil.of(orderService.cancel(ordersCancelDTO));
     }
 
     /**
@@ -1,5 +1,7 @@
 package com.sky.controller.admin;
 
+import com.sky.constant.MessageConstant;
+import com.sky.exception.ReportBusinessException;
 import com.sky.result.Result;
 import com.sky.service.ReportService;
 import com.sky.vo.OrderReportVO;
@@ -13,18 +15,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import java.io.FileInputStream;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 
 @RestController("adminReportController")
 @RequestMapping("/admin/report")
 @Slf4j
 @Api(tags = "数据统计相关接口")
 public class ReportController {
+    //统计区间最多包含的天数
+    private static final int MAX_REPORT_DAYS = 366;
+
     @Autowired
     private ReportService reportService;
 
@@ -42,6 +49,7 @@ public class ReportController {
             @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end
     ) {
         log.info("营业额统计:{}~{}", begin, end);
+        checkDateRange(begin, end);
         return Result.success(reportService.getTurnoverStatistics(begin, end));
     }
 
@@ -59,6 +67,7 @@ public class ReportController {
             @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end
     ) {
         log.info("用户统计:{}~{}", begin, end);
+        checkDateRange(begin, end);
         return Result.success(reportService.getUserStatistics(begin, end));
     }
     /**
@@ -74,6 +83,7 @@ public class ReportController {
             @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end
     ){
         log.info("订单统计:{}~{}",begin,end);
+        checkDateRange(begin, end);
         return Result.success(reportService.getOrderStatistics(begin,end));
     }
     /**
@@ -89,17 +99,42 @@ public class ReportController {
             @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end
     ){
         log.info("销量排名Top10:{}~{}",begin,end);
+        checkDateRange(begin, end);
         return Result.success(reportService.getSalesTop10Statistics(begin,end));
     }
 
     /**
      * 导出运营数据报表
+     * @param begin
+     * @param end
+     * @param withOrders
      * @param response
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response){
-        reportService.export(response);
+    public void export(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+            @RequestParam(defaultValue = "false") boolean withOrders,
+            HttpServletResponse response){
+        log.info("导出运营数据报表:{}~{}", begin, end);
+        //默认导出近30天的运营数据
+        LocalDate dateBegin = begin != null ? begin : LocalDate.now().minusDays(30);
+        LocalDate dateEnd = end != null ? end : LocalDate.now().minusDays(1);
+        checkDateRange(dateBegin, dateEnd);
+        reportService.export(dateBegin, dateEnd, withOrders, response);
+    }
+
+    /**
+     * 校验统计区间，开始日期晚于结束日期或区间过大时抛出业务异常，由全局异常处理器返回错误信息
+     * @param begin
+     * @param end
+     */
+    private void checkDateRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)
+                || ChronoUnit.DAYS.between(begin, end) + 1 > MAX_REPORT_DAYS) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_INVALID);
+        }
     }
 
 }
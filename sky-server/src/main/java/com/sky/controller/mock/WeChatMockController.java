@@ -0,0 +1,212 @@
+package com.sky.controller.mock;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.WeChatMockProperties;
+import com.sky.properties.WeChatProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微信接口模拟服务，只用于本地压测
+ * 模拟小程序登录、jsapi下单、申请退款接口，并在下单和退款后按微信的格式加密发送回调通知
+ * 使用时把sky.wechat.pay-base-url和sky.wechat.login-base-url指向/mock/wechat，见application-mock.yml
+ */
+@RestController
+@RequestMapping("/mock/wechat")
+@ConditionalOnProperty(prefix = "sky.wechat-mock", name = "enabled", havingValue = "true")
+@Slf4j
+public class WeChatMockController {
+    @Autowired
+    private WeChatMockProperties weChatMockProperties;
+    @Autowired
+    private WeChatProperties weChatProperties;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private ScheduledExecutorService notifyExecutor;
+
+    @PostConstruct
+    public void init() {
+        log.warn("已启用微信接口模拟服务，只能用于本地压测");
+        notifyExecutor = Executors.newScheduledThreadPool(2);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        notifyExecutor.shutdownNow();
+    }
+
+    /**
+     * 模拟小程序登录，同一个code返回同一个openid
+     */
+    @GetMapping("/sns/jscode2session")
+    public ResponseEntity<String> jscode2session(@RequestParam("js_code") String code) {
+        simulateLatency();
+        if (shouldFail()) {
+            return json(HttpStatus.OK, error("-1", "system error"));
+        }
+        JSONObject result = new JSONObject();
+        result.put("openid", "mock_" + code);
+        result.put("session_key", RandomStringUtils.randomAlphanumeric(24));
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * 模拟jsapi下单，成功后延迟发送支付成功通知
+     */
+    @PostMapping("/v3/pay/transactions/jsapi")
+    public ResponseEntity<String> jsapi(@RequestBody String body) {
+        simulateLatency();
+        if (shouldFail()) {
+            return json(HttpStatus.INTERNAL_SERVER_ERROR, error("SYSTEM_ERROR", "系统错误"));
+        }
+        JSONObject request = JSON.parseObject(body);
+        String outTradeNo = request.getString("out_trade_no");
+
+        JSONObject transaction = new JSONObject();
+        transaction.put("out_trade_no", outTradeNo);
+        transaction.put("transaction_id", "mock" + RandomStringUtils.randomNumeric(24));
+        transaction.put("trade_state", "SUCCESS");
+        transaction.put("amount", request.getJSONObject("amount"));
+        scheduleNotify(request.getString("notify_url"), "TRANSACTION.SUCCESS", "transaction", transaction);
+
+        JSONObject result = new JSONObject();
+        result.put("prepay_id", "mock_prepay_" + UUID.randomUUID().toString().replace("-", ""));
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * 模拟申请退款，成功后延迟发送退款成功通知
+     */
+    @PostMapping("/v3/refund/domestic/refunds")
+    public ResponseEntity<String> refunds(@RequestBody String body) {
+        simulateLatency();
+        if (shouldFail()) {
+            return json(HttpStatus.INTERNAL_SERVER_ERROR, error("SYSTEM_ERROR", "系统错误"));
+        }
+        JSONObject request = JSON.parseObject(body);
+        String refundId = "mock" + RandomStringUtils.randomNumeric(24);
+
+        JSONObject refund = new JSONObject();
+        refund.put("out_trade_no", request.getString("out_trade_no"));
+        refund.put("out_refund_no", request.getString("out_refund_no"));
+        refund.put("transaction_id", "mock" + RandomStringUtils.randomNumeric(24));
+        refund.put("refund_id", refundId);
+        refund.put("refund_status", "SUCCESS");
+        scheduleNotify(request.getString("notify_url"), "REFUND.SUCCESS", "refund", refund);
+
+        JSONObject result = new JSONObject();
+        result.put("refund_id", refundId);
+        result.put("out_refund_no", request.getString("out_refund_no"));
+        result.put("status", "PROCESSING");
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * 按微信支付的格式用APIv3密钥加密通知内容，延迟发送到回调地址，按概率重复发送
+     */
+    private void scheduleNotify(String notifyUrl, String eventType, String associatedData, JSONObject plain) {
+        if (notifyUrl == null) {
+            return;
+        }
+        String notifyBody;
+        try {
+            notifyBody = buildNotifyBody(eventType, associatedData, plain.toJSONString());
+        } catch (Exception e) {
+            log.error("生成模拟回调通知失败", e);
+            return;
+        }
+        int times = ThreadLocalRandom.current().nextDouble() < weChatMockProperties.getDuplicateNotifyRate() ? 2 : 1;
+        for (int i = 0; i < times; i++) {
+            notifyExecutor.schedule(() -> {
+                try {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                    restTemplate.postForEntity(notifyUrl, new HttpEntity<>(notifyBody, headers), String.class);
+                } catch (Exception e) {
+                    log.error("发送模拟回调通知失败：{}", notifyUrl, e);
+                }
+            }, weChatMockProperties.getNotifyDelay() * (i + 1), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private String buildNotifyBody(String eventType, String associatedData, String plainText) throws Exception {
+        byte[] nonce = RandomStringUtils.randomAlphanumeric(12).getBytes(StandardCharsets.UTF_8);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(weChatProperties.getApiV3Key().getBytes(StandardCharsets.UTF_8), "AES"),
+                new GCMParameterSpec(128, nonce));
+        cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+        String ciphertext = Base64.getEncoder().encodeToString(cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+
+        JSONObject resource = new JSONObject();
+        resource.put("algorithm", "AEAD_AES_256_GCM");
+        resource.put("ciphertext", ciphertext);
+        resource.put("associated_data", associatedData);
+        resource.put("nonce", new String(nonce, StandardCharsets.UTF_8));
+
+        JSONObject body = new JSONObject();
+        body.put("id", UUID.randomUUID().toString());
+        body.put("event_type", eventType);
+        body.put("resource_type", "encrypt-resource");
+        body.put("resource", resource);
+        return body.toJSONString();
+    }
+
+    private void simulateLatency() {
+        long latency = weChatMockProperties.getLatency();
+        if (weChatMockProperties.getLatencyJitter() > 0) {
+            latency += ThreadLocalRandom.current().nextLong(weChatMockProperties.getLatencyJitter());
+        }
+        if (latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean shouldFail() {
+        return ThreadLocalRandom.current().nextDouble() < weChatMockProperties.getFailureRate();
+    }
+
+    private JSONObject error(String code, String message) {
+        JSONObject result = new JSONObject();
+        result.put("code", code);
+        result.put("message", message);
+        return result;
+    }
+
+    private ResponseEntity<String> json(HttpStatus status, JSONObject body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body.toJSONString());
+    }
+}
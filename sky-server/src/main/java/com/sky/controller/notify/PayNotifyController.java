@@ -3,18 +3,21 @@ package com.sky.controller.notify;
 import com.alibaba.druid.support.json.JSONUtils;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.PayNotifyEvent;
 import com.sky.properties.WeChatProperties;
-import com.sky.service.OrderService;
+import com.sky.service.PayNotifyService;
 import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.entity.ContentType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 
 /**
@@ -24,10 +27,16 @@ import java.util.HashMap;
 @RequestMapping("/notify")
 @Slf4j
 public class PayNotifyController {
+    //已处理回调通知的key前缀，微信在24小时内重试通知
+    private static final String NOTIFY_KEY_PREFIX = "notify:";
+    private static final Duration NOTIFY_DEDUP_TTL = Duration.ofHours(24);
+
     @Autowired
-    private OrderService orderService;
+    private PayNotifyService payNotifyService;
     @Autowired
     private WeChatProperties weChatProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
     /**
      * 支付成功回调
@@ -51,8 +60,13 @@ public class PayNotifyController {
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        //业务处理，修改订单状态、来单提醒
-        orderService.paySuccess(outTradeNo);
+        //记录回调事件后立即响应，修改订单状态、来单提醒由后台线程处理，同一笔交易只处理一次
+        String notifyKey = transactionId != null ? transactionId : outTradeNo;
+        handleOnce("pay:" + notifyKey, () -> payNotifyService.accept(PayNotifyEvent.builder()
+                .type(PayNotifyEvent.PAY_SUCCESS)
+                .notifyKey(notifyKey)
+                .outTradeNo(outTradeNo)
+                .build()));
 
         //给微信响应
         responseToWeixin(response);
@@ -75,17 +89,53 @@ public class PayNotifyController {
         JSONObject jsonObject = JSON.parseObject(plainText);
         String outTradeNo = jsonObject.getString("out_trade_no"); // 商户平台订单号
         String transactionId = jsonObject.getString("transaction_id"); // 微信支付交易号
+        String refundId = jsonObject.getString("refund_id"); // 微信支付退款单号
 
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        // 业务处理，修改订单状态、退款提醒等
-        orderService.refundSuccess(outTradeNo);
+        // 记录回调事件后立即响应，修改订单状态由后台线程处理，同一笔退款只处理一次
+        String notifyKey = refundId != null ? refundId : outTradeNo;
+        handleOnce("refund:" + notifyKey, () -> payNotifyService.accept(PayNotifyEvent.builder()
+                .type(PayNotifyEvent.REFUND_SUCCESS)
+                .notifyKey(notifyKey)
+                .outTradeNo(outTradeNo)
+                .build()));
 
         // 给微信响应
         responseToWeixin(response);
     }
 
+    /**
+     * 同一个回调通知在有效期内只处理一次，重复通知直接响应微信
+     * redis只用于快速过滤重复通知，回调事件表的唯一索引和订单状态的条件更新保证并发重复通知也只生效一次
+     *
+     * @param key
+     * @param handler
+     */
+    private void handleOnce(String key, Runnable handler) {
+        String redisKey = NOTIFY_KEY_PREFIX + key;
+        Boolean first;
+        try {
+            first = stringRedisTemplate.opsForValue().setIfAbsent(redisKey, "1", NOTIFY_DEDUP_TTL);
+        } catch (Exception e) {
+            log.error("回调通知去重失败，直接处理：{}", key, e);
+            handler.run();
+            return;
+        }
+        if (!Boolean.TRUE.equals(first)) {
+            log.info("重复的回调通知，忽略：{}", key);
+            return;
+        }
+        try {
+            handler.run();
+        } catch (RuntimeException e) {
+            // 处理失败时删除标记，让微信的重试能够重新处理
+            stringRedisTemplate.delete(redisKey);
+            throw e;
+        }
+    }
+
     /**
      * 读取数据
      *
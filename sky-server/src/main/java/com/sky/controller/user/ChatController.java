@@ -1,11 +1,17 @@
 package com.sky.controller.user;
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
 import com.sky.entity.Chat;
+import com.sky.exception.ChatBusinessException;
 import com.sky.result.Result;
 import com.sky.service.ChatService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -24,9 +30,36 @@ public class ChatController {
      */
     @GetMapping("/history/{orderId}")
     @ApiOperation("获取订单的聊天记录")
-    public Result<List<Chat>> getChatHistory(@PathVariable Long orderId) {
-        List<Chat> chatList = chatService.getChatsByOrderId(orderId);
-        return Result.success(chatList);
+    public ResponseEntity<Result<List<Chat>>> getChatHistory(@PathVariable Long orderId,
+                                                             @RequestParam(required = false) Long since,
+                                                             @RequestParam(required = false) Long before,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        checkAccess(orderId);
+        // 聊天记录没有变化时返回304，不查询消息内容
+        String eTag = "\"" + chatService.getHistoryVersion(orderId) + "-" + since + "-" + before + "-" + limit + "\"";
+        if (eTag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        List<Chat> chatList = chatService.getChatHistory(orderId, since, before, limit);
+        return ResponseEntity.ok().eTag(eTag).body(Result.success(chatList));
+    }
+
+    /**
+     * 发送聊天消息，供无法建立WebSocket连接的客户端使用
+     */
+    @PostMapping("/send")
+    @ApiOperation("发送聊天消息")
+    public Result<Chat> send(@RequestBody Chat chat) {
+        checkAccess(chat.getOrderId());
+        // 发送者为当前登录用户，不使用请求中的发送者和角色
+        Chat message = Chat.builder()
+                .orderId(chat.getOrderId())
+                .customerId(BaseContext.getCurrentId())
+                .sendRole(0)
+                .content(chat.getContent())
+                .build();
+        return Result.success(chatService.sendChat(message));
     }
 
     /**
@@ -45,7 +78,18 @@ public class ChatController {
     @GetMapping("/unread")
     @ApiOperation("获取未读消息数量")
     public Result<Integer> getUnreadCount(@RequestParam Long orderId, @RequestParam Integer role) {
+        checkAccess(orderId);
         int count = chatService.getUnreadCount(orderId, role);
         return Result.success(count);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 只能访问当前登录用户自己订单的聊天
+     * @param orderId
+     */
+    private void checkAccess(Long orderId) {
+        if (!chatService.isOrderOwner(orderId, BaseContext.getCurrentId())) {
+            throw new ChatBusinessException(MessageConstant.CHAT_ACCESS_DENIED);
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.sky.controller.user;
 
-import com.sky.constant.StatusConstant;
-import com.sky.entity.Dish;
 import com.sky.result.Result;
 import com.sky.service.DishService;
 import com.sky.vo.DishVO;
@@ -32,12 +30,8 @@ public class DishController {
     @ApiOperation("根据分类id查询菜品")
     public Result<List<DishVO>> list(Long categoryId) {
         log.info("根据分类id查询菜品：{}", categoryId);
-        Dish dish = new Dish();
-        dish.setCategoryId(categoryId);
-        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
-        
-        // 直接从数据库查询菜品数据
-        List<DishVO> dishVOList = dishService.listWithFlavor(dish);
+        // 查询起售中的菜品，缓存中不存在时再查询数据库
+        List<DishVO> dishVOList = dishService.listEnabledWithFlavor(categoryId);
         return Result.success(dishVOList);
     }
 
@@ -5,6 +5,7 @@ import com.sky.dto.OrdersSubmitDTO;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
+import com.sky.utils.DeferredResultUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
@@ -13,6 +14,7 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @RestController("userOrderController")
 @RequestMapping("/user/order")
@@ -41,11 +43,13 @@ public class OrderController {
      */
     @PutMapping("/payment")
     @ApiOperation("订单支付")
-    public Result<OrderPaymentVO> payment(@RequestBody OrdersPaymentDTO ordersPaymentDTO) throws Exception {
+    public DeferredResult<Result<OrderPaymentVO>> payment(@RequestBody OrdersPaymentDTO ordersPaymentDTO) {
         log.info("订单支付：{}", ordersPaymentDTO);
-        OrderPaymentVO orderPaymentVO = orderService.payment(ordersPaymentDTO);
-        log.info("生成预支付交易单：{}", orderPaymentVO);
-        return Result.success(orderPaymentVO);
+        return DeferredResultUtil.of(orderService.payment(ordersPaymentDTO)
+                .thenApply(orderPaymentVO -> {
+                    log.info("生成预支付交易单：{}", orderPaymentVO);
+                    return orderPaymentVO;
+                }));
     }
     /**
      * 历史订单查询
@@ -70,10 +74,9 @@ public class OrderController {
      */
     @PutMapping("/cancel/{id}")
     @ApiOperation("取消订单")
-    public Result cancel(@PathVariable("id") Long id)throws Exception{
+    public DeferredResult<Result<Void>> cancel(@PathVariable("id") Long id){
         log.info("取消订单");
-        orderService.cancel(id);
-        return Result.success();
+        return DeferredResultUtil.of(orderService.cancel(id));
     }
 
     /**
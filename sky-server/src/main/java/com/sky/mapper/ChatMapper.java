@@ -14,6 +14,12 @@ public interface ChatMapper {
      * @param chat 聊天记录对象
      */
     void insert(Chat chat);
+
+    /**
+     * 批量插入聊天记录，id已在发送时生成
+     * @param chats 聊天记录列表
+     */
+    void insertBatch(@Param("chats") List<Chat> chats);
     
     /**
      * 根据订单ID查询聊天记录
@@ -21,6 +27,42 @@ public interface ChatMapper {
      * @return 聊天记录列表
      */
     List<Chat> selectByOrderId(@Param("orderId") Long orderId);
+
+    /**
+     * 查询某条消息之后的聊天记录，按id升序
+     * @param orderId 订单ID
+     * @param since 客户端已有的最后一条消息ID
+     * @param limit 最多返回的条数
+     * @return 聊天记录列表
+     */
+    List<Chat> selectAfter(@Param("orderId") Long orderId, @Param("since") Long since, @Param("limit") int limit);
+
+    /**
+     * 查询两条消息之间的聊天记录，不含两端，按id升序，不限条数
+     * 用于重新读取游标之前可能晚写入的消息，时间窗口很短，条数有限
+     * @param orderId 订单ID
+     * @param after 起始消息ID
+     * @param before 结束消息ID
+     * @return 聊天记录列表
+     */
+    List<Chat> selectBetween(@Param("orderId") Long orderId, @Param("after") Long after, @Param("before") Long before);
+
+    /**
+     * 查询某条消息之前的聊天记录，按id降序，before为空时查询最新的记录
+     * @param orderId 订单ID
+     * @param before 客户端已有的最早一条消息ID
+     * @param limit 最多返回的条数
+     * @return 聊天记录列表
+     */
+    List<Chat> selectBefore(@Param("orderId") Long orderId, @Param("before") Long before, @Param("limit") int limit);
+
+    /**
+     * 查询订单聊天记录的版本，消息条数、最大id和未读数任一变化时版本变化
+     * 只读取(order_id, id, read_status)索引，不回表
+     * @param orderId 订单ID
+     * @return 版本
+     */
+    String selectVersion(@Param("orderId") Long orderId);
     
     /**
      * 更新消息读取状态
@@ -0,0 +1,99 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyOrderStats;
+import com.sky.entity.DailyUserStats;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyStatsMapper {
+    /**
+     * 当日订单总数加一
+     * @param statDate
+     */
+    @Insert("insert into daily_order_stats (stat_date, order_count, update_time) values (#{statDate}, 1, now()) " +
+            "on duplicate key update order_count = order_count + 1, update_time = now()")
+    void incrementOrderCount(LocalDate statDate);
+
+    /**
+     * 当日有效订单数加一，并累加营业额
+     * @param statDate
+     * @param amount
+     */
+    @Insert("insert into daily_order_stats (stat_date, valid_order_count, turnover, update_time) values (#{statDate}, 1, #{amount}, now()) " +
+            "on duplicate key update valid_order_count = valid_order_count + 1, turnover = turnover + #{amount}, update_time = now()")
+    void incrementValidOrder(LocalDate statDate, BigDecimal amount);
+
+    /**
+     * 当日有效订单数和营业额批量累加
+     * @param statDate
+     * @param count
+     * @param amount
+     */
+    @Insert("insert into daily_order_stats (stat_date, valid_order_count, turnover, update_time) values (#{statDate}, #{count}, #{amount}, now()) " +
+            "on duplicate key update valid_order_count = valid_order_count + #{count}, turnover = turnover + #{amount}, update_time = now()")
+    void addValidOrders(LocalDate statDate, int count, BigDecimal amount);
+
+    /**
+     * 当日新增用户数加一
+     * @param statDate
+     */
+    @Insert("insert into daily_user_stats (stat_date, new_user_count, update_time) values (#{statDate}, 1, now()) " +
+            "on duplicate key update new_user_count = new_user_count + 1, update_time = now()")
+    void incrementNewUser(LocalDate statDate);
+
+    /**
+     * 查询日期区间内的订单统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_order_stats where stat_date between #{begin} and #{end}")
+    List<DailyOrderStats> listOrderStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询日期区间内的用户统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_user_stats where stat_date between #{begin} and #{end}")
+    List<DailyUserStats> listUserStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 删除日期区间内的订单统计
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_order_stats where stat_date between #{begin} and #{end}")
+    void deleteOrderStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 删除日期区间内的用户统计
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_user_stats where stat_date between #{begin} and #{end}")
+    void deleteUserStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 根据订单表重新汇总时间区间内的订单统计
+     * @param begin
+     * @param end
+     */
+    void rebuildOrderStats(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 根据用户表重新汇总时间区间内的用户统计
+     * @param begin
+     * @param end
+     */
+    void rebuildUserStats(LocalDateTime begin, LocalDateTime end);
+}
@@ -21,4 +21,6 @@ public interface DishFlavorMapper {
     //根据菜品id查询对应口味数据
     @Select("select * from dish_flavor where dish_id = #{dishId}")
     List<DishFlavor> getByDishId(Long dishId);
+    //根据菜品id集合批量查询对应口味数据
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
 }
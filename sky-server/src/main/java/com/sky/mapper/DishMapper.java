@@ -5,6 +5,7 @@ import com.sky.annotation.AutoFill;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
 import com.sky.enumeration.OperationType;
+import com.sky.vo.DishOverViewVO;
 import com.sky.vo.DishVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
@@ -77,4 +78,10 @@ public interface DishMapper {
      */
     @Select("select * from dish where name = #{dishName}")
     Dish getByName(String dishName);
+
+    /**
+     * 一次统计起售和停售的数量
+     * @return
+     */
+    DishOverViewVO getOverView();
 }
@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
+import com.sky.dto.BusinessStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderDateStatisticsDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
+import com.sky.vo.OrderOverViewVO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
@@ -60,6 +63,37 @@ public interface OrderMapper {
     @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
     List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime);
 
+    /**
+     * 按id顺序分页查询指定状态、下单时间早于orderTime的订单，只查询id、下单时间和金额
+     * @param status
+     * @param orderTime
+     * @param lastId 上一页最后一个订单的id，第一页传0
+     * @param limit
+     * @return
+     */
+    @Select("select id, order_time, amount from orders where status = #{status} and order_time < #{orderTime} " +
+            "and id > #{lastId} order by id limit #{limit}")
+    List<Orders> listByStatusAndOrderTimeLTAfterId(Integer status, LocalDateTime orderTime, Long lastId, int limit);
+
+    /**
+     * 锁定仍处于指定状态的订单，只查询id、下单时间和金额，需要在事务中调用
+     * @param ids
+     * @param status
+     * @return
+     */
+    List<Orders> lockByIdsAndStatus(@Param("ids") List<Long> ids, Integer status);
+
+    /**
+     * 批量修改订单状态，只修改当前状态仍为fromStatus的订单
+     * @param ids
+     * @param fromStatus
+     * @param status
+     * @param cancelReason 为空时不修改
+     * @param cancelTime 为空时不修改
+     * @return 影响行数
+     */
+    int updateStatusByIds(@Param("ids") List<Long> ids, Integer fromStatus, Integer status, String cancelReason, LocalDateTime cancelTime);
+
     /**
      * 根据动态条件统计营业额数量
      * @param map
@@ -89,6 +123,51 @@ public interface OrderMapper {
     @Update("update orders set status = #{orderStatus},pay_status = #{orderPaidStatus} ,checkout_time = #{check_out_time} " +
             "where number = #{orderNumber}")
     void updateStatus(Integer orderStatus, Integer orderPaidStatus, LocalDateTime check_out_time, String orderNumber);
+    /**
+     * 订单当前状态为fromStatus时完成订单并记录送达时间，并发完成同一订单时只有一次成功
+     * @param id
+     * @param fromStatus
+     * @param status
+     * @param deliveryTime
+     * @return 影响行数
+     */
+    @Update("update orders set status = #{status}, delivery_time = #{deliveryTime} " +
+            "where id = #{id} and status = #{fromStatus}")
+    int completeByIdIfStatus(Long id, Integer fromStatus, Integer status, LocalDateTime deliveryTime);
+
+    /**
+     * 订单当前状态为fromStatus时更新订单状态、支付状态和结账时间，重复的支付回调不会再次修改
+     * @param number
+     * @param fromStatus
+     * @param status
+     * @param payStatus
+     * @param checkoutTime
+     * @return 影响行数，为0表示订单状态已经变更过
+     */
+    @Update("update orders set status = #{status}, pay_status = #{payStatus}, checkout_time = #{checkoutTime} " +
+            "where number = #{number} and status = #{fromStatus}")
+    int updateStatusByNumberIfStatus(String number, Integer fromStatus, Integer status, Integer payStatus, LocalDateTime checkoutTime);
+
+    /**
+     * 订单当前支付状态为fromPayStatus时更新订单状态、支付状态和结账时间，重复的退款回调不会再次修改
+     * @param number
+     * @param fromPayStatus
+     * @param status
+     * @param payStatus
+     * @param checkoutTime
+     * @return 影响行数，为0表示支付状态已经变更过
+     */
+    @Update("update orders set status = #{status}, pay_status = #{payStatus}, checkout_time = #{checkoutTime} " +
+            "where number = #{number} and pay_status = #{fromPayStatus}")
+    int updateStatusByNumberIfPayStatus(String number, Integer fromPayStatus, Integer status, Integer payStatus, LocalDateTime checkoutTime);
+
+    /**
+     * 根据订单号查询订单id
+     * @param number
+     * @return
+     */
+    @Select("select id from orders where number = #{number}")
+    Long getIdByNumber(String number);
     /**
      * 根据订单号查询订单价格
      *
@@ -103,4 +182,38 @@ public interface OrderMapper {
      * @return
      */
     List<Long> getOrdersIdsByPatientIds(@Param("patientIds") List<Long> patientIds);
+
+    /**
+     * 按下单日期和订单状态分组统计订单数量和金额
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<OrderDateStatisticsDTO> countAndSumGroupByDate(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按id顺序分批查询时间区间内的订单
+     * @param begin
+     * @param end
+     * @param lastId 上一批最后一条订单的id
+     * @param limit
+     * @return
+     */
+    @Select("select * from orders where order_time >= #{begin} and order_time < #{end} and id > #{lastId} order by id limit #{limit}")
+    List<Orders> listByOrderTimeAfterId(LocalDateTime begin, LocalDateTime end, Long lastId, Integer limit);
+
+    /**
+     * 一次统计时间段内的订单总数、有效订单数、营业额和新增用户数
+     * @param begin
+     * @param end
+     * @return
+     */
+    BusinessStatisticsDTO getBusinessStatistics(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 一次统计指定时间之后各状态的订单数量
+     * @param begin
+     * @return
+     */
+    OrderOverViewVO getOrderOverView(LocalDateTime begin);
 }
@@ -0,0 +1,49 @@
+package com.sky.mapper;
+
+import com.sky.entity.PayNotifyEvent;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface PayNotifyEventMapper {
+    /**
+     * 插入回调事件，相同类型和去重标识的事件已存在时忽略
+     * @param event
+     * @return 影响行数，为0表示重复的回调
+     */
+    @Insert("insert ignore into pay_notify_event (type, notify_key, out_trade_no, status, retry_count, create_time, update_time) " +
+            "values (#{type}, #{notifyKey}, #{outTradeNo}, #{status}, 0, #{createTime}, #{updateTime})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertIgnore(PayNotifyEvent event);
+
+    /**
+     * 批量标记为已处理
+     * @param ids
+     */
+    void markDone(@Param("ids") List<Long> ids);
+
+    /**
+     * 处理失败次数加一，达到上限时标记为处理失败
+     * @param id
+     * @param maxRetries
+     */
+    @Update("update pay_notify_event set retry_count = retry_count + 1, " +
+            "status = if(retry_count >= #{maxRetries}, 2, status), update_time = now() where id = #{id}")
+    void increaseRetry(Long id, int maxRetries);
+
+    /**
+     * 查询最后更新时间早于指定时间的待处理事件
+     * @param before
+     * @param limit
+     * @return
+     */
+    @Select("select * from pay_notify_event where status = 0 and update_time < #{before} order by id limit #{limit}")
+    List<PayNotifyEvent> listPending(LocalDateTime before, int limit);
+}
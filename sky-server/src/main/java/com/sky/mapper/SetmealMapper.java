@@ -6,6 +6,7 @@ import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Setmeal;
 import com.sky.enumeration.OperationType;
 import com.sky.vo.DishItemVO;
+import com.sky.vo.SetmealOverViewVO;
 import com.sky.vo.SetmealVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
@@ -79,4 +80,10 @@ public interface SetmealMapper {
     Integer countByMap(Map map);
     @Select("select * from setmeal where name = #{setmealName}")
     Setmeal getByName(String setmealName);
+
+    /**
+     * 一次统计起售和停售的数量
+     * @return
+     */
+    SetmealOverViewVO getOverView();
 }
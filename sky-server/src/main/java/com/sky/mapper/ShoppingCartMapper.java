@@ -31,6 +31,47 @@ public interface ShoppingCartMapper {
     @Insert("insert into shopping_cart (name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) VALUES" +
             "(#{name}, #{image}, #{userId},#{dishId},#{setmealId},#{dishFlavor},#{number},#{amount},#{createTime})")
     void insert(ShoppingCart shoppingCart);
+    /**
+     * 插入购物车数据，已有相同商品时累加数量
+     * 依赖购物车表上(user_id, item_key)的唯一索引
+     * @param shoppingCart
+     */
+    @Insert("insert into shopping_cart (name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) VALUES" +
+            "(#{name}, #{image}, #{userId},#{dishId},#{setmealId},#{dishFlavor},#{number},#{amount},#{createTime})" +
+            " on duplicate key update number = number + #{number}")
+    void upsertIncrement(ShoppingCart shoppingCart);
+
+    /**
+     * 批量插入购物车数据，已有相同商品时累加数量
+     * @param shoppingCartList
+     */
+    void upsertIncrementBatch(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 购物车中的商品数量加一
+     * @param shoppingCart 用户id、菜品id或套餐id、口味
+     * @return 影响行数，为0表示购物车中没有该商品
+     */
+    @Update("update shopping_cart set number = number + 1 where user_id = #{userId}" +
+            " and dish_id <=> #{dishId} and setmeal_id <=> #{setmealId} and dish_flavor <=> #{dishFlavor}")
+    int incrementNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 购物车中的商品数量减一
+     * @param shoppingCart 用户id、菜品id或套餐id、口味
+     */
+    @Update("update shopping_cart set number = number - 1 where user_id = #{userId}" +
+            " and dish_id <=> #{dishId} and setmeal_id <=> #{setmealId} and dish_flavor <=> #{dishFlavor}")
+    void decrementNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 删除数量已减到零的商品
+     * @param shoppingCart 用户id、菜品id或套餐id、口味
+     */
+    @Delete("delete from shopping_cart where user_id = #{userId}" +
+            " and dish_id <=> #{dishId} and setmeal_id <=> #{setmealId} and dish_flavor <=> #{dishFlavor} and number <= 0")
+    void deleteEmpty(ShoppingCart shoppingCart);
+
     /**
      * 根据用户id删除购物车数据
      * @param userId
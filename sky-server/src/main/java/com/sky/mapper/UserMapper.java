@@ -1,10 +1,13 @@
 package com.sky.mapper;
 
+import com.sky.dto.UserDateStatisticsDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -31,4 +34,12 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按注册日期分组统计新增用户数量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<UserDateStatisticsDTO> countGroupByDate(LocalDateTime begin, LocalDateTime end);
 }
@@ -12,6 +12,22 @@ public interface ChatService {
      * @param chat 聊天记录对象
      */
     void saveChat(Chat chat);
+
+    /**
+     * 判断订单是否属于该用户，用户只能访问自己订单的聊天
+     * @param orderId 订单ID
+     * @param userId 用户ID
+     * @return 订单存在且属于该用户时返回true
+     */
+    boolean isOrderOwner(Long orderId, Long userId);
+
+    /**
+     * 发送聊天消息，立即推送给订阅了该订单的客户端，聊天记录异步批量写入数据库
+     * 调用方负责校验权限，并根据登录身份设置发送者id和角色
+     * @param chat 聊天记录对象
+     * @return 生成了id和发送时间的聊天记录
+     */
+    Chat sendChat(Chat chat);
     
     /**
      * 获取指定订单的聊天记录
@@ -19,6 +35,25 @@ public interface ChatService {
      * @return 聊天记录列表
      */
     List<Chat> getChatsByOrderId(Long orderId);
+
+    /**
+     * 按游标分页获取指定订单的聊天记录，结果按id升序
+     * 传入since时返回该消息之后的最多limit条记录，另外附带since之前sky.chat.history-overlap时间内的全部记录（不计入limit），客户端需要按id去重
+     * 传入before时返回该消息之前的记录，都不传时返回最新的记录
+     * @param orderId 订单ID
+     * @param since 客户端已有的最后一条消息ID
+     * @param before 客户端已有的最早一条消息ID
+     * @param limit 最多返回的条数
+     * @return 聊天记录列表
+     */
+    List<Chat> getChatHistory(Long orderId, Long since, Long before, Integer limit);
+
+    /**
+     * 获取指定订单聊天记录的版本，没有新消息和已读状态变化时不变
+     * @param orderId 订单ID
+     * @return 版本
+     */
+    String getHistoryVersion(Long orderId);
     
     /**
      * 将消息标记为已读
@@ -0,0 +1,12 @@
+package com.sky.service;
+
+import java.time.LocalDate;
+
+public interface DailyStatsService {
+    /**
+     * 根据订单表和用户表重新汇总日期区间内的每日统计数据
+     * @param begin
+     * @param end
+     */
+    void rebuild(LocalDate begin, LocalDate end);
+}
@@ -31,6 +31,12 @@ public interface DishService {
      * @return
      */
     List<DishVO> listWithFlavor(Dish dish);
+    /**
+     * 根据分类id查询起售中的菜品和口味，优先读取redis缓存
+     * @param categoryId
+     * @return
+     */
+    List<DishVO> listEnabledWithFlavor(Long categoryId);
     /**
      * 菜品起售停售
      * @param status
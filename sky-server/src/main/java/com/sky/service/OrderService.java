@@ -7,6 +7,9 @@ import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface OrderService {
     /**
      * 用户下单
@@ -20,7 +23,7 @@ public interface OrderService {
      * @param ordersPaymentDTO
      * @return
      */
-    OrderPaymentVO payment(OrdersPaymentDTO ordersPaymentDTO) throws Exception;
+    CompletableFuture<OrderPaymentVO> payment(OrdersPaymentDTO ordersPaymentDTO);
 
     /**
      * 支付成功，修改订单状态
@@ -41,7 +44,7 @@ public interface OrderService {
      * 取消订单
      * @param id
      */
-    void cancel(Long id) throws Exception;
+    CompletableFuture<Void> cancel(Long id);
     /**
      * 查询订单详情
      * @param id
@@ -76,13 +79,13 @@ public interface OrderService {
      *
      * @param ordersRejectionDTO
      */
-    void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception;
+    CompletableFuture<Void> rejection(OrdersRejectionDTO ordersRejectionDTO);
     /**
      * 商家取消订单
      *
      * @param ordersCancelDTO
      */
-    void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception;
+    CompletableFuture<Void> cancel(OrdersCancelDTO ordersCancelDTO);
     /**
      * 派送订单
      *
@@ -95,6 +98,13 @@ public interface OrderService {
      * @return
      */
     void complete(Long id);
+
+    /**
+     * 批量完成派送中的订单，并累加下单当日的有效订单数和营业额
+     * @param ids
+     * @return 实际完成的订单数
+     */
+    int autoComplete(List<Long> ids);
     /**
      * 客户催单
      * @param id
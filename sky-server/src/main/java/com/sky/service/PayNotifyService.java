@@ -0,0 +1,16 @@
+package com.sky.service;
+
+import com.sky.entity.PayNotifyEvent;
+
+public interface PayNotifyService {
+    /**
+     * 接收回调事件：写入回调事件表后放入处理队列，不等待处理完成
+     * @param event
+     */
+    void accept(PayNotifyEvent event);
+
+    /**
+     * 把长时间未处理完的事件重新放入处理队列
+     */
+    void recoverPending();
+}
@@ -37,7 +37,10 @@ public interface ReportService {
     SalesTop10ReportVO getSalesTop10Statistics(LocalDate begin, LocalDate end);
     /**
      * 导出运营数据报表
+     * @param begin 开始日期，为空时默认30天前
+     * @param end 结束日期，为空时默认昨天
+     * @param withOrders 是否附带订单明细
      * @param response
      */
-    void export(HttpServletResponse response);
+    void export(LocalDate begin, LocalDate end, boolean withOrders, HttpServletResponse response);
 }
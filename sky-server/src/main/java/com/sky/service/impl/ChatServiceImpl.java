@@ -1,21 +1,80 @@
 package com.sky.service.impl;
 
 
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.WebSocketTopicConstant;
 import com.sky.entity.Chat;
+import com.sky.entity.Orders;
+import com.sky.exception.ChatBusinessException;
 import com.sky.mapper.ChatMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.ChatProperties;
 import com.sky.service.ChatService;
+import com.sky.utils.OrderNumberGenerator;
+import com.sky.websocket.WebSocketClusterBus;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 聊天服务
+ * 通过WebSocket发送的消息先推送给订单的参与者，再放入队列由写入线程合并为多行insert批量保存
+ * 消息id在发送时生成，推送的消息和数据库中的记录id一致，客户端可以据此增量拉取历史记录
+ */
 @Service
 @Slf4j
 public class ChatServiceImpl implements ChatService {
 
+    //推送给客户端的消息类型：聊天消息
+    private static final int MESSAGE_TYPE_CHAT = 3;
+
     @Autowired
     private ChatMapper chatMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private ChatProperties chatProperties;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private WebSocketClusterBus webSocketClusterBus;
+
+    private BlockingQueue<Chat> queue;
+    private Thread writer;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(chatProperties.getQueueCapacity());
+        writer = new Thread(this::write, "chat-writer");
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.interrupt();
+        writer.join(5000);
+        // 写入线程退出后把队列中剩余的消息写完
+        List<Chat> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("保存剩余的聊天记录：{}条", remaining.size());
+            insert(remaining);
+        }
+    }
+
     /**
      * 保存聊天记录
      * @param chat 聊天记录对象
@@ -23,6 +82,49 @@ public class ChatServiceImpl implements ChatService {
     public void saveChat(Chat chat) {
         chatMapper.insert(chat);
     }
+
+    /**
+     * 判断订单是否属于该用户，用户只能访问自己订单的聊天
+     * @param orderId 订单ID
+     * @param userId 用户ID
+     * @return 订单存在且属于该用户时返回true
+     */
+    public boolean isOrderOwner(Long orderId, Long userId) {
+        if (orderId == null || userId == null) {
+            return false;
+        }
+        Orders orders = orderMapper.getById(orderId);
+        return orders != null && userId.equals(orders.getUserId());
+    }
+
+    /**
+     * 发送聊天消息，立即推送给订阅了该订单的客户端，聊天记录异步批量写入数据库
+     * @param chat 聊天记录对象
+     * @return 生成了id和发送时间的聊天记录
+     */
+    public Chat sendChat(Chat chat) {
+        String content = chat.getContent();
+        if (chat.getOrderId() == null || chat.getCustomerId() == null || chat.getSendRole() == null || content == null || content.trim().isEmpty()
+                || content.length() > chatProperties.getMaxContentLength()) {
+            throw new ChatBusinessException(MessageConstant.CHAT_CONTENT_INVALID);
+        }
+        chat.setId(orderNumberGenerator.nextId());
+        chat.setSendTime(LocalDateTime.now());
+        chat.setReadStatus(1);
+
+        Map map = new HashMap();
+        map.put("type", MESSAGE_TYPE_CHAT);
+        map.put("chat", chat);
+        webSocketClusterBus.publish(WebSocketTopicConstant.order(chat.getOrderId()), JSON.toJSONString(map));
+
+        if (!queue.offer(chat)) {
+            // 写入线程跟不上时由发送方直接写入，不丢消息
+            log.warn("聊天记录写入队列已满，直接写入数据库");
+            chatMapper.insert(chat);
+        }
+        return chat;
+    }
+
     /**
      * 获取指定订单的聊天记录
      * @param orderId 订单ID
@@ -31,6 +133,47 @@ public class ChatServiceImpl implements ChatService {
     public List<Chat> getChatsByOrderId(Long orderId) {
         return chatMapper.selectByOrderId(orderId);
     }
+
+    /**
+     * 按游标分页获取指定订单的聊天记录，结果按id升序
+     * @param orderId 订单ID
+     * @param since 客户端已有的最后一条消息ID
+     * @param before 客户端已有的最早一条消息ID
+     * @param limit 最多返回的条数
+     * @return 聊天记录列表
+     */
+    public List<Chat> getChatHistory(Long orderId, Long since, Long before, Integer limit) {
+        int size = limit == null || limit <= 0 ? chatProperties.getHistoryPageSize()
+                : Math.min(limit, chatProperties.getHistoryMaxPageSize());
+        if (since != null) {
+            // since之后的新消息按limit分页，保证每次都能拿到比since大的消息，游标一定前进
+            List<Chat> chatList = chatMapper.selectAfter(orderId, since, size);
+            // 比since小的消息可能在客户端拉取之后才写入，再把since之前一段时间内的消息全部带上，客户端按id去重
+            // 小于回退量的是改用雪花id之前同步写入的自增id，不需要回退
+            long rewound = OrderNumberGenerator.rewind(since, chatProperties.getHistoryOverlap());
+            if (rewound > 0) {
+                List<Chat> overlap = chatMapper.selectBetween(orderId, rewound, since);
+                if (!overlap.isEmpty()) {
+                    overlap.addAll(chatList);
+                    return overlap;
+                }
+            }
+            return chatList;
+        }
+        List<Chat> chatList = chatMapper.selectBefore(orderId, before, size);
+        Collections.reverse(chatList);
+        return chatList;
+    }
+
+    /**
+     * 获取指定订单聊天记录的版本，没有新消息和已读状态变化时不变
+     * @param orderId 订单ID
+     * @return 版本
+     */
+    public String getHistoryVersion(Long orderId) {
+        return chatMapper.selectVersion(orderId);
+    }
+
     /**
      * 将消息标记为已读
      * @param chatId 聊天记录ID
@@ -47,4 +190,48 @@ public class ChatServiceImpl implements ChatService {
     public int getUnreadCount(Long orderId, Integer role) {
         return chatMapper.countUnread(orderId, role);
     }
-} 
\ No newline at end of file
+
+    private void write() {
+        List<Chat> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(chatProperties.getFlushDelay());
+                while (batch.size() < chatProperties.getBatchSize()) {
+                    Chat chat = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (chat == null) {
+                        break;
+                    }
+                    batch.add(chat);
+                }
+                insert(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // 已取出的消息直接写入，队列中剩余的由stop写入
+                if (!batch.isEmpty()) {
+                    insert(batch);
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 合并为一条insert语句写入，失败时逐条写入，只丢弃写不进去的消息
+     * @param batch
+     */
+    private void insert(List<Chat> batch) {
+        try {
+            chatMapper.insertBatch(batch);
+        } catch (Exception e) {
+            log.error("批量保存聊天记录失败，改为逐条保存：{}条", batch.size(), e);
+            for (Chat chat : batch) {
+                try {
+                    chatMapper.insert(chat);
+                } catch (Exception ex) {
+                    log.error("保存聊天记录失败：{}", chat, ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sky.service.impl;
+
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.service.DailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+@Service
+@Slf4j
+public class DailyStatsServiceImpl implements DailyStatsService {
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
+
+    /**
+     * 重新汇总每日统计数据
+     * 先删除区间内的汇总行，再按天聚合写入，没有订单或用户的日期不会留下过期数据
+     * @param begin
+     * @param end
+     */
+    @Transactional
+    public void rebuild(LocalDate begin, LocalDate end) {
+        log.info("重新汇总每日统计数据：{}~{}", begin, end);
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
+
+        dailyStatsMapper.deleteOrderStats(begin, end);
+        dailyStatsMapper.rebuildOrderStats(beginTime, endTime);
+
+        dailyStatsMapper.deleteUserStats(begin, end);
+        dailyStatsMapper.rebuildUserStats(beginTime, endTime);
+    }
+}
@@ -21,16 +21,24 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Stack;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class DishServiceImpl implements DishService {
+    //菜品缓存在redis中的key前缀，按分类缓存起售中的菜品
+    private static final String DISH_CACHE_KEY_PREFIX = "dish_";
+    //菜品缓存的过期时间，清理缓存失败时最多保留这么久的旧数据
+    private static final long DISH_CACHE_TTL_MINUTES = 60;
+
     @Autowired
     private DishMapper dishMapper;
     @Autowired
@@ -39,6 +47,8 @@ public class DishServiceImpl implements DishService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private RedisTemplate redisTemplate;
 
 
     //新增菜品和对应口味
@@ -59,6 +69,8 @@ public class DishServiceImpl implements DishService {
             //向口味表插入N条数据
             dishFlavorMapper.insertBatch(flavors);
         }
+        //清理菜品所属分类的缓存
+        cleanCache(Collections.singletonList(dish.getCategoryId()));
     }
 
     //菜品分页查询
@@ -73,12 +85,14 @@ public class DishServiceImpl implements DishService {
     @Transactional
     public void deleteBatch(List<Long> ids) {
         //判断菜品是否能够删除--是否存在起售中菜品
+        Set<Long> categoryIds = new HashSet<>();
         for (Long id : ids) {
             Dish dish = dishMapper.getById(id);
             if (dish.getStatus() == StatusConstant.ENABLE) {
                 //当前菜品处于起售中，不能删除
                 throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
             }
+            categoryIds.add(dish.getCategoryId());
         }
         //判断菜品是否能够删除--是否被套餐关联
         List<Long> setmealIds = setmealDishMapper.getSetmealIdsByDishIds(ids);
@@ -96,6 +110,8 @@ public class DishServiceImpl implements DishService {
         dishMapper.deleteByIds(ids);
         //根据菜品id集合批量删除关联口味数据
         dishFlavorMapper.deleteByDishIds(ids);
+        //清理被删除菜品所属分类的缓存
+        cleanCache(categoryIds);
     }
     //根据id查询菜品和对应口味
 
@@ -112,7 +128,10 @@ public class DishServiceImpl implements DishService {
     }
 
     //修改菜品信息
+    @Transactional
     public void updateWithFlavor(DishDTO dishDTO) {
+        //修改前的分类，菜品换分类时新旧分类的缓存都要清理
+        Dish dishDB = dishMapper.getById(dishDTO.getId());
         Dish dish = new Dish();
         BeanUtils.copyProperties(dishDTO, dish);
         //修改菜品基本信息
@@ -128,6 +147,7 @@ public class DishServiceImpl implements DishService {
             //向口味表插入N条数据
             dishFlavorMapper.insertBatch(flavors);
         }
+        cleanCache(Arrays.asList(dishDB.getCategoryId(), dishDTO.getCategoryId()));
     }
 
     /**
@@ -154,13 +174,21 @@ public class DishServiceImpl implements DishService {
         List<Dish> dishList = dishMapper.list(dish);
 
         List<DishVO> dishVOList = new ArrayList<>();
+        if (dishList == null || dishList.isEmpty()) {
+            return dishVOList;
+        }
+
+        //一次查询出所有菜品的口味，按菜品id分组
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
 
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d, dishVO);
 
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
+            //取出菜品对应的口味
+            List<DishFlavor> flavors = flavorMap.getOrDefault(d.getId(), new ArrayList<>());
 
             dishVO.setFlavors(flavors);
             dishVOList.add(dishVO);
@@ -168,6 +196,28 @@ public class DishServiceImpl implements DishService {
 
         return dishVOList;
     }
+
+    /**
+     * 根据分类id查询起售中的菜品和口味
+     * 先查询redis缓存，缓存不存在时查询数据库并写入缓存
+     *
+     * @param categoryId
+     * @return
+     */
+    public List<DishVO> listEnabledWithFlavor(Long categoryId) {
+        String key = DISH_CACHE_KEY_PREFIX + categoryId;
+        List<DishVO> dishVOList = (List<DishVO>) redisTemplate.opsForValue().get(key);
+        if (dishVOList != null) {
+            return dishVOList;
+        }
+        Dish dish = Dish.builder()
+                .categoryId(categoryId)
+                .status(StatusConstant.ENABLE)//查询起售中的菜品
+                .build();
+        dishVOList = listWithFlavor(dish);
+        redisTemplate.opsForValue().set(key, dishVOList, DISH_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+        return dishVOList;
+    }
     /**
      * 菜品起售停售
      * @param status
@@ -181,6 +231,37 @@ public class DishServiceImpl implements DishService {
                 //.updateUser(BaseContext.getCurrentId())
                 .build();
         dishMapper.update(dish);
+        //起售停售会改变分类下可见的菜品，清理所属分类的缓存
+        Dish dishDB = dishMapper.getById(id);
+        if (dishDB != null) {
+            cleanCache(Collections.singletonList(dishDB.getCategoryId()));
+        }
+    }
+
+    /**
+     * 清理指定分类的菜品缓存
+     * 在事务中调用时等事务提交后再清理，避免并发查询在提交前把旧数据重新写入缓存
+     * @param categoryIds
+     */
+    private void cleanCache(Collection<Long> categoryIds) {
+        List<String> keys = categoryIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(categoryId -> DISH_CACHE_KEY_PREFIX + categoryId)
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    redisTemplate.delete(keys);
+                }
+            });
+        } else {
+            redisTemplate.delete(keys);
+        }
     }
 
 }
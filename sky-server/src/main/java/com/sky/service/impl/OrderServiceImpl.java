@@ -1,11 +1,12 @@
 package com.sky.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.xiaoymin.knife4j.core.util.CollectionUtils;
+import com.sky.cart.ShoppingCartStore;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.WebSocketTopicConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.*;
@@ -18,7 +19,9 @@ import com.sky.service.AddressBookService;
 import com.sky.service.DishService;
 import com.sky.service.OrderService;
 import com.sky.service.ShoppingCartService;
-import com.sky.utils.WeChatPayUtil;
+import com.sky.task.OrderTimeoutQueue;
+import com.sky.utils.OrderNumberGenerator;
+import com.sky.utils.WeChatPayAsyncUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
@@ -35,11 +38,13 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Service
@@ -52,15 +57,21 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
     @Autowired
     private UserMapper userMapper;
     @Autowired
-    private WeChatPayUtil weChatPayUtil;
+    private WeChatPayAsyncUtil weChatPayAsyncUtil;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
     @Autowired
     private WebSocketServer webSocketServer;
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
+    @Autowired
+    private OrderTimeoutQueue orderTimeoutQueue;
 
     /**
      * 用户下单
@@ -77,9 +88,7 @@ public class OrderServiceImpl implements OrderService {
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = shoppingCartStore.list(userId);
         if (shoppingCartList == null || shoppingCartList.size() == 0) {
             // 购物车为空
             throw new AddressBookBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
@@ -91,7 +100,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
         orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));
+        orders.setNumber(orderNumberGenerator.nextNumber());
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setUserId(userId);
@@ -105,8 +114,12 @@ public class OrderServiceImpl implements OrderService {
             orderDetailList.add(orderDetail);
         }
         orderDetailMapper.insertBatch(orderDetailList);
+        // 超时未支付时自动取消
+        orderTimeoutQueue.schedule(orders.getId(), orders.getOrderTime());
+        // 当日订单统计数加一
+        dailyStatsMapper.incrementOrderCount(orders.getOrderTime().toLocalDate());
         //4. 清空购物车
-        shoppingCartMapper.deleleByUserId(userId);
+        shoppingCartStore.clean(userId);
         //5. 封装VO
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
                 .id(orders.getId())
@@ -122,27 +135,27 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersPaymentDTO
      * @return
      */
-    public OrderPaymentVO payment(OrdersPaymentDTO ordersPaymentDTO) throws Exception {
+    public CompletableFuture<OrderPaymentVO> payment(OrdersPaymentDTO ordersPaymentDTO) {
         // 当前登录用户id
         Long userId = BaseContext.getCurrentId();
         User user = userMapper.getById(userId);
         Double amount = orderMapper.getByOrderNumber(ordersPaymentDTO.getOrderNumber());
-        //调用微信支付接口，生成预支付交易单
-        JSONObject jsonObject = weChatPayUtil.pay(
+        //调用微信支付接口，生成预支付交易单，不阻塞请求线程
+        return weChatPayAsyncUtil.pay(
                 ordersPaymentDTO.getOrderNumber(), //商户订单号
                 new BigDecimal(amount), //支付金额，单位 元
                 "云e养订单", //商品描述
                 user.getOpenid() //微信用户的openid
-        );
-
-        if (jsonObject.getString("code") != null && jsonObject.getString("code").equals("ORDERPAID")) {
-            throw new OrderBusinessException("该订单已支付");
-        }
+        ).thenApply(jsonObject -> {
+            if (jsonObject.getString("code") != null && jsonObject.getString("code").equals("ORDERPAID")) {
+                throw new OrderBusinessException("该订单已支付");
+            }
 
-        OrderPaymentVO vo = jsonObject.toJavaObject(OrderPaymentVO.class);
-        vo.setPackageStr(jsonObject.getString("package"));
+            OrderPaymentVO vo = jsonObject.toJavaObject(OrderPaymentVO.class);
+            vo.setPackageStr(jsonObject.getString("package"));
 
-        return vo;
+            return vo;
+        });
     }
 
 
@@ -152,26 +165,22 @@ public class OrderServiceImpl implements OrderService {
      * @param outTradeNo
      */
     public void paySuccess(String outTradeNo) {
-
-        // 根据订单号查询订单
-        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
-
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
-                .payStatus(Orders.PAID)
-                .checkoutTime(LocalDateTime.now())
-                .build();
-
-        orderMapper.update(orders);
+        // 只有待付款的订单才更新为待接单，重复回调时不会再修改订单和推送消息
+        int updated = orderMapper.updateStatusByNumberIfStatus(outTradeNo, Orders.PENDING_PAYMENT,
+                Orders.TO_BE_CONFIRMED, Orders.PAID, LocalDateTime.now());
+        if (updated == 0) {
+            log.info("订单{}已处理过支付成功或不是待付款状态，忽略本次回调", outTradeNo);
+            return;
+        }
+        Long orderId = orderMapper.getIdByNumber(outTradeNo);
+        orderTimeoutQueue.remove(orderId);
 
         // 通过WebSocket向客户端浏览器推送消息
         Map map = new HashMap();
         map.put("type", 1);// 1：表示来一条新订单 2： 表示客户催单
-        map.put("orderId", ordersDB.getId());
-        map.put("content", "订单号：" + ordersDB.getNumber());
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        map.put("orderId", orderId);
+        map.put("content", "订单号：" + outTradeNo);
+        webSocketServer.sendToTopic(WebSocketTopicConstant.ADMIN, map);
     }
     /**
      * 用户端订单分页查询
@@ -196,11 +205,11 @@ public class OrderServiceImpl implements OrderService {
 
         // 查询出订单明细，并封装入OrderVO进行响应
         if (page != null && page.getTotal() > 0) {
+            // 一次性查询本页所有订单的明细，按订单id分组
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(page.getResult());
             for (Orders orders : page) {
-                Long orderId = orders.getId();// 订单id
-
-                // 查询订单明细
-                List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(orderId);
+                // 取出当前订单的明细
+                List<OrderDetail> orderDetails = orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>());
 
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
@@ -215,7 +224,7 @@ public class OrderServiceImpl implements OrderService {
      * 取消订单
      * @param id
      */
-    public void cancel(Long id) throws Exception {
+    public CompletableFuture<Void> cancel(Long id) {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(id);
         // 检查订单是否存在
@@ -228,23 +237,26 @@ public class OrderServiceImpl implements OrderService {
         }
         Orders orders =new Orders();
         orders.setId(ordersDB.getId());
+        // 更新订单状态、取消原因、取消时间
+        orders.setStatus(Orders.CANCELLED);
+        orders.setCancelReason("用户取消");
+        orders.setCancelTime(LocalDateTime.now());
         // 订单处于待接单状态下取消，需要进行退款
         if (ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            //调用微信支付退款接口
-            weChatPayUtil.refund(
+            //调用微信支付退款接口，退款成功后再修改订单
+            return weChatPayAsyncUtil.refund(
                     ordersDB.getNumber(), //商户订单号
                     ordersDB.getNumber(), //商户退款单号
                     ordersDB.getAmount(), //退款金额，单位 元
                     ordersDB.getAmount() //原订单金额
-            );
-            //支付状态修改为 退款
-            orders.setPayStatus(Orders.REFUND);
+            ).thenAccept(refund -> {
+                //支付状态修改为 退款
+                orders.setPayStatus(Orders.REFUND);
+                orderMapper.update(orders);
+            });
         }
-        // 更新订单状态、取消原因、取消时间
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason("用户取消");
-        orders.setCancelTime(LocalDateTime.now());
         orderMapper.update(orders);
+        return CompletableFuture.completedFuture(null);
     }
     /**
      * 查询订单详情
@@ -278,7 +290,7 @@ public class OrderServiceImpl implements OrderService {
             shoppingCart.setCreateTime(LocalDateTime.now());
             shoppingCartList.add(shoppingCart);
         }
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        shoppingCartStore.addBatch(shoppingCartList);
     }
     /**
      * 订单搜索
@@ -298,11 +310,13 @@ public class OrderServiceImpl implements OrderService {
 
         List<Orders> ordersList = page.getResult();
         if (!CollectionUtils.isEmpty(ordersList)) {
+            // 一次性查询本页所有订单的明细，按订单id分组
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
             for (Orders orders : ordersList) {
                 // 将共同字段复制到OrderVO
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
-                String orderDishes = getOrderDishesStr(orders);
+                String orderDishes = getOrderDishesStr(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
 
                 // 将订单菜品信息封装到orderVO中，并添加到orderVOList
                 orderVO.setOrderDishes(orderDishes);
@@ -312,15 +326,27 @@ public class OrderServiceImpl implements OrderService {
         return orderVOList;
     }
     /**
-     * 根据订单id获取菜品信息字符串
+     * 批量查询订单明细，并按订单id分组
      *
-     * @param orders
+     * @param ordersList
      * @return
      */
-    private String getOrderDishesStr(Orders orders) {
-        // 查询订单菜品详情信息（订单中的菜品和数量）
-        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
-
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        if (orderIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        // 查询订单菜品详情信息（订单中的菜品和数量），只发起一次查询
+        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderIds(orderIds);
+        return orderDetailList.stream().collect(Collectors.groupingBy(OrderDetail::getOrderId));
+    }
+    /**
+     * 根据订单明细获取菜品信息字符串
+     *
+     * @param orderDetailList
+     * @return
+     */
+    private String getOrderDishesStr(List<OrderDetail> orderDetailList) {
         // 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3；）
         List<String> orderDishList = orderDetailList.stream().map(x -> {
             String orderDish = x.getName() + "*" + x.getNumber() + ";";
@@ -363,7 +389,7 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param ordersRejectionDTO
      */
-    public void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
+    public CompletableFuture<Void> rejection(OrdersRejectionDTO ordersRejectionDTO) {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
 
@@ -372,55 +398,64 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
 
+        // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
+        Orders orders = new Orders();
+        orders.setId(ordersDB.getId());
+        orders.setStatus(Orders.CANCELLED);
+        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
+        orders.setCancelTime(LocalDateTime.now());
+
         //支付状态
         Integer payStatus = ordersDB.getPayStatus();
         if (payStatus == Orders.PAID) {
-            //用户已支付，需要退款
-            String refund = weChatPayUtil.refund(
+            //用户已支付，需要退款，退款申请成功后再修改订单
+            return weChatPayAsyncUtil.refund(
                     ordersDB.getNumber(),
                     ordersDB.getNumber(),
                     ordersDB.getAmount(), //退款金额，单位 元
-                    ordersDB.getAmount()); //原订单金额
-            log.info("申请退款：{}", refund);
+                    ordersDB.getAmount() //原订单金额
+            ).thenAccept(refund -> {
+                log.info("申请退款：{}", refund);
+                orderMapper.update(orders);
+            });
         }
 
-        // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
-        orders.setCancelTime(LocalDateTime.now());
-
         orderMapper.update(orders);
+        return CompletableFuture.completedFuture(null);
     }
     /**
      * 取消订单
      *
      * @param ordersCancelDTO
      */
-    public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
+    public CompletableFuture<Void> cancel(OrdersCancelDTO ordersCancelDTO) {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
 
+        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
+        Orders orders = new Orders();
+        orders.setId(ordersCancelDTO.getId());
+        orders.setStatus(Orders.CANCELLED);
+        orders.setCancelReason(ordersCancelDTO.getCancelReason());
+        orders.setCancelTime(LocalDateTime.now());
+
         //支付状态
         Integer payStatus = ordersDB.getPayStatus();
         if (payStatus == 1) {
-            //用户已支付，需要退款
-            String refund = weChatPayUtil.refund(
+            //用户已支付，需要退款，退款申请成功后再修改订单
+            return weChatPayAsyncUtil.refund(
                     ordersDB.getNumber(),
                     ordersDB.getNumber(),
                     new BigDecimal(0.01),
-                    new BigDecimal(0.01));
-            log.info("申请退款：{}", refund);
+                    new BigDecimal(0.01)
+            ).thenAccept(refund -> {
+                log.info("申请退款：{}", refund);
+                orderMapper.update(orders);
+            });
         }
 
-        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersCancelDTO.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason(ordersCancelDTO.getCancelReason());
-        orders.setCancelTime(LocalDateTime.now());
         orderMapper.update(orders);
+        return CompletableFuture.completedFuture(null);
     }
     /**
      * 派送订单
@@ -448,6 +483,7 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      * @return
      */
+    @Transactional
     public void complete(Long id) {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(id);
@@ -457,14 +493,35 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
 
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-
-        // 更新订单状态,状态转为完成
-        orders.setStatus(Orders.COMPLETED);
-        // 更新完成时间
-        orders.setDeliveryTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        // 仍在派送中时才改为完成并更新完成时间，同时完成或与定时任务并发时只有一方成功
+        int updated = orderMapper.completeByIdIfStatus(id, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED,
+                LocalDateTime.now());
+        if (updated == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        // 下单当日的有效订单数和营业额累加
+        dailyStatsMapper.incrementValidOrder(ordersDB.getOrderTime().toLocalDate(), ordersDB.getAmount());
+    }
+    /**
+     * 批量完成派送中的订单
+     * 先锁定仍在派送中的订单再修改，统计数据只累加本次真正完成的订单
+     * @param ids
+     * @return
+     */
+    @Transactional
+    public int autoComplete(List<Long> ids) {
+        List<Orders> ordersList = orderMapper.lockByIdsAndStatus(ids, Orders.DELIVERY_IN_PROGRESS);
+        if (ordersList.isEmpty()) {
+            return 0;
+        }
+        List<Long> lockedIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        orderMapper.updateStatusByIds(lockedIds, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, null, null);
+        // 按下单日期汇总后累加有效订单数和营业额
+        Map<LocalDate, List<Orders>> ordersByDate = ordersList.stream()
+                .collect(Collectors.groupingBy(orders -> orders.getOrderTime().toLocalDate()));
+        ordersByDate.forEach((date, list) -> dailyStatsMapper.addValidOrders(date, list.size(),
+                list.stream().map(Orders::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add)));
+        return ordersList.size();
     }
     /**
      * 客户催单
@@ -483,7 +540,7 @@ public class OrderServiceImpl implements OrderService {
         map.put("type", 2);
         map.put("orderId", ordersDB.getId());
         map.put("content", "订单号："+ordersDB.getNumber());
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        webSocketServer.sendToTopic(WebSocketTopicConstant.ADMIN, map);
     }
 
     /**
@@ -492,17 +549,11 @@ public class OrderServiceImpl implements OrderService {
      * @param outTradeNo
      */
     public void refundSuccess(String outTradeNo) {
-        // 根据订单号查询订单
-        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
-
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.CANCELLED)
-                .payStatus(Orders.REFUND)
-                .checkoutTime(LocalDateTime.now())
-                .build();
-
-        orderMapper.update(orders);
+        // 只有已支付的订单才更新为已退款，重复回调或取消订单时已经标记退款的不会再修改
+        int updated = orderMapper.updateStatusByNumberIfPayStatus(outTradeNo, Orders.PAID,
+                Orders.CANCELLED, Orders.REFUND, LocalDateTime.now());
+        if (updated == 0) {
+            log.info("订单{}已处理过退款或未支付，忽略本次回调", outTradeNo);
+        }
     }
 }
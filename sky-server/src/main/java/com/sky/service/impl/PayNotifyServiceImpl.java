@@ -0,0 +1,131 @@
+package com.sky.service.impl;
+
+import com.sky.entity.PayNotifyEvent;
+import com.sky.mapper.PayNotifyEventMapper;
+import com.sky.properties.PayNotifyProperties;
+import com.sky.service.OrderService;
+import com.sky.service.PayNotifyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 支付回调异步处理
+ * 回调接口只负责写入回调事件表并放入有界队列，处理线程批量取出事件修改订单状态
+ * 队列满或进程崩溃时未处理的事件留在表中，由PayNotifyTask定时重新入队
+ */
+@Service
+@Slf4j
+public class PayNotifyServiceImpl implements PayNotifyService {
+    @Autowired
+    private PayNotifyEventMapper payNotifyEventMapper;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private PayNotifyProperties payNotifyProperties;
+
+    private BlockingQueue<PayNotifyEvent> queue;
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(payNotifyProperties.getQueueCapacity());
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(payNotifyProperties.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "pay-notify-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < payNotifyProperties.getWorkers(); i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // 队列中未处理的事件仍是待处理状态，重启后由定时任务补处理
+        workers.shutdownNow();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public void accept(PayNotifyEvent event) {
+        LocalDateTime now = LocalDateTime.now();
+        event.setStatus(PayNotifyEvent.PENDING);
+        event.setCreateTime(now);
+        event.setUpdateTime(now);
+        if (payNotifyEventMapper.insertIgnore(event) == 0) {
+            log.info("重复的回调事件，忽略：{}", event.getNotifyKey());
+            return;
+        }
+        if (!queue.offer(event)) {
+            log.warn("回调处理队列已满，事件{}等待定时任务处理", event.getId());
+        }
+    }
+
+    public void recoverPending() {
+        LocalDateTime before = LocalDateTime.now().minusSeconds(payNotifyProperties.getRecoverAfterSeconds());
+        // 只补足队列剩余容量，避免把同一批事件重复放入队列
+        int limit = queue.remainingCapacity();
+        if (limit == 0) {
+            return;
+        }
+        List<PayNotifyEvent> events = payNotifyEventMapper.listPending(before, limit);
+        if (!events.isEmpty()) {
+            log.info("重新处理未完成的回调事件：{}条", events.size());
+            events.forEach(queue::offer);
+        }
+    }
+
+    private void work() {
+        List<PayNotifyEvent> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, payNotifyProperties.getBatchSize() - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("处理回调事件异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 逐个修改订单状态，成功的事件一次性标记为已处理
+     * @param batch
+     */
+    private void process(List<PayNotifyEvent> batch) {
+        List<Long> doneIds = new ArrayList<>();
+        for (PayNotifyEvent event : batch) {
+            try {
+                if (PayNotifyEvent.PAY_SUCCESS.equals(event.getType())) {
+                    orderService.paySuccess(event.getOutTradeNo());
+                } else if (PayNotifyEvent.REFUND_SUCCESS.equals(event.getType())) {
+                    orderService.refundSuccess(event.getOutTradeNo());
+                }
+                doneIds.add(event.getId());
+            } catch (Exception e) {
+                log.error("处理回调事件失败：{}", event, e);
+                payNotifyEventMapper.increaseRetry(event.getId(), payNotifyProperties.getMaxRetries());
+            }
+        }
+        if (!doneIds.isEmpty()) {
+            payNotifyEventMapper.markDone(doneIds);
+        }
+    }
+}
@@ -2,15 +2,27 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.util.StringUtil;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderDateStatisticsDTO;
+import com.sky.dto.UserDateStatisticsDTO;
+import com.sky.entity.DailyOrderStats;
+import com.sky.entity.DailyUserStats;
+import com.sky.entity.OrderDetail;
 import com.sky.entity.Orders;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.mapper.OrderDetailMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
 import com.sky.service.OrderService;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -21,6 +33,7 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -33,12 +46,27 @@ import static java.lang.System.in;
 @Service
 @Slf4j
 public class ReportServiceImpl implements ReportService {
+    //模板中明细数据的起始行
+    private static final int DETAIL_ROW_START = 7;
+    //模板中明细数据的列数（从第二列开始）
+    private static final int DETAIL_COLUMN_COUNT = 6;
+    //流式写入时内存中保留的行数
+    private static final int ROW_ACCESS_WINDOW_SIZE = 100;
+    //导出订单明细时每批查询的订单数
+    private static final int ORDER_BATCH_SIZE = 500;
+    //订单状态名称，下标为订单状态
+    private static final String[] ORDER_STATUS_NAMES = {"", "待付款", "待接单", "已接单", "派送中", "已完成", "已取消", "退款"};
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
-    private WorkspaceService workspaceService;
+    private OrderDetailMapper orderDetailMapper;
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
+    @Autowired
+    private ReportProperties reportProperties;
     /**
      * 营业额统计
      * @param begin
@@ -46,27 +74,15 @@ public class ReportServiceImpl implements ReportService {
      * @return
      */
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
-
         // 当前集合统计开始到结束之间的每个日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (!begin.equals(end)){
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        // 一次查询出区间内的每日订单统计
+        Map<LocalDate, DailyOrderStats> statsMap = getOrderStatsMap(begin, end);
         List<Double> turnoverList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            Map map = new HashMap();
-            map.put("begin",beginTime);
-            map.put("end",endTime);
-            map.put("status", Orders.COMPLETED);
-            // 获取当天的订单总金额
-            Double turnover = orderMapper.sumByMap(map);
-            if (turnover == null) {
-                turnover = 0.0;
-            }
+            // 获取当天的订单总金额，没有统计数据的日期营业额为0
+            DailyOrderStats stats = statsMap.get(date);
+            Double turnover = stats == null ? 0.0 : stats.getTurnover().doubleValue();
             turnoverList.add(turnover);
         }
         return TurnoverReportVO.builder()
@@ -83,24 +99,20 @@ public class ReportServiceImpl implements ReportService {
      */
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         // 当前集合统计开始到结束之间的每个日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (!begin.equals(end)){
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        // 一次查询出区间内的每日新增用户数
+        Map<LocalDate, Integer> newUserMap = getNewUserMap(begin, end);
+        // 开始日期之前的用户总数，作为累计的起点
+        Map map = new HashMap();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        Integer totalUser = userMapper.countByMap(map);
         List<Integer> newUserList = new ArrayList<>();
         List<Integer> totalUserList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            Map map = new HashMap();
-            map.put("end",endTime);
-            Integer totalUser = userMapper.countByMap(map);
-            totalUserList.add(totalUser);
-            map.put("begin",beginTime);
-            Integer newUser = userMapper.countByMap(map);
+            Integer newUser = newUserMap.getOrDefault(date, 0);
+            totalUser += newUser;
             newUserList.add(newUser);
+            totalUserList.add(totalUser);
         }
         return UserReportVO
                 .builder()
@@ -117,24 +129,16 @@ public class ReportServiceImpl implements ReportService {
      */
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
         // 当前集合统计开始到结束之间的每个日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (!begin.equals(end)){
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        // 一次查询出区间内的每日订单统计
+        Map<LocalDate, DailyOrderStats> statsMap = getOrderStatsMap(begin, end);
         // 遍历日期集合，获取每个日期对应的订单总数和有效订单总数
         List<Integer> orderCountList = new ArrayList<>();
         List<Integer> validOrderCountList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            // 查询每天订单总数
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-            // 查询每天有效订单总数
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-            orderCountList.add(orderCount);
-            validOrderCountList.add(validOrderCount);
+            DailyOrderStats stats = statsMap.get(date);
+            orderCountList.add(stats == null ? 0 : stats.getOrderCount());
+            validOrderCountList.add(stats == null ? 0 : stats.getValidOrderCount());
         }
         // 计算时间区间内的订单总数
         Integer totalOrderCount = orderCountList.stream().reduce(Integer::sum).get();
@@ -156,18 +160,68 @@ public class ReportServiceImpl implements ReportService {
     }
 
     /**
-     * 根据条件查询订单数量
+     * 获取开始到结束之间的每个日期
      * @param begin
      * @param end
-     * @param status
      * @return
      */
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
-        map.put("status",status);
-        return orderMapper.countByMap(map);
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        // 开始日期晚于结束日期时返回空列表，不会一直循环
+        while (!begin.isAfter(end)){
+            dateList.add(begin);
+            begin = begin.plusDays(1);
+        }
+        return dateList;
+    }
+
+    /**
+     * 查询日期区间内的每日订单统计，按日期建立索引
+     * 没有订单的日期不在结果中，由调用方补0
+     * @param begin
+     * @param end
+     * @return
+     */
+    private Map<LocalDate, DailyOrderStats> getOrderStatsMap(LocalDate begin, LocalDate end) {
+        if (reportProperties.isUseRollup()) {
+            return dailyStatsMapper.listOrderStats(begin, end).stream()
+                    .collect(Collectors.toMap(DailyOrderStats::getStatDate, stats -> stats));
+        }
+        // 按日期和状态分组聚合订单表，再将同一天各状态的数据合并
+        List<OrderDateStatisticsDTO> list = orderMapper.countAndSumGroupByDate(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end.plusDays(1), LocalTime.MIN));
+        Map<LocalDate, DailyOrderStats> statsMap = new HashMap<>();
+        for (OrderDateStatisticsDTO dto : list) {
+            DailyOrderStats stats = statsMap.computeIfAbsent(dto.getOrderDate(), date -> DailyOrderStats.builder()
+                    .statDate(date)
+                    .orderCount(0)
+                    .validOrderCount(0)
+                    .turnover(BigDecimal.ZERO)
+                    .build());
+            stats.setOrderCount(stats.getOrderCount() + dto.getOrderCount());
+            if (Orders.COMPLETED.equals(dto.getStatus())) {
+                stats.setValidOrderCount(stats.getValidOrderCount() + dto.getOrderCount());
+                stats.setTurnover(stats.getTurnover().add(dto.getAmount()));
+            }
+        }
+        return statsMap;
+    }
+
+    /**
+     * 查询日期区间内的每日新增用户数，按日期建立索引
+     * 没有新增用户的日期不在结果中，由调用方补0
+     * @param begin
+     * @param end
+     * @return
+     */
+    private Map<LocalDate, Integer> getNewUserMap(LocalDate begin, LocalDate end) {
+        if (reportProperties.isUseRollup()) {
+            return dailyStatsMapper.listUserStats(begin, end).stream()
+                    .collect(Collectors.toMap(DailyUserStats::getStatDate, DailyUserStats::getNewUserCount));
+        }
+        return userMapper.countGroupByDate(LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end.plusDays(1), LocalTime.MIN))
+                .stream()
+                .collect(Collectors.toMap(UserDateStatisticsDTO::getCreateDate, UserDateStatisticsDTO::getUserCount));
     }
     /**
      * 销量排名top10
@@ -190,41 +244,78 @@ public class ReportServiceImpl implements ReportService {
     }
     /**
      * 导出运营数据报表
+     * @param begin
+     * @param end
+     * @param withOrders 是否附带订单明细
      * @param response
      */
-    public void export(HttpServletResponse response) {
-        //1. 查询数据库，获取营业数据，查询进30天的运营数据
-        LocalDate dateBegin = LocalDate.now().minusDays(30);
-        LocalDate dateEnd = LocalDate.now().minusDays(1);
-        LocalDateTime begin = LocalDateTime.of(dateBegin, LocalTime.MIN);
-        LocalDateTime end = LocalDateTime.of(dateEnd, LocalTime.MAX);
-        // 查询概览数据
-        BusinessDataVO businessDataVO = workspaceService.getBusinessData(begin, end);
+    public void export(LocalDate begin, LocalDate end, boolean withOrders, HttpServletResponse response) {
+        //1. 查询数据库，获取营业数据，默认查询近30天的运营数据
+        LocalDate dateBegin = begin != null ? begin : LocalDate.now().minusDays(30);
+        LocalDate dateEnd = end != null ? end : LocalDate.now().minusDays(1);
+        List<LocalDate> dateList = getDateList(dateBegin, dateEnd);
+        // 一次查询出区间内的每日订单统计和新增用户数
+        Map<LocalDate, DailyOrderStats> statsMap = getOrderStatsMap(dateBegin, dateEnd);
+        Map<LocalDate, Integer> newUserMap = getNewUserMap(dateBegin, dateEnd);
+        // 由每日数据汇总出概览数据
+        DailyOrderStats total = DailyOrderStats.builder()
+                .orderCount(0)
+                .validOrderCount(0)
+                .turnover(BigDecimal.ZERO)
+                .build();
+        for (DailyOrderStats stats : statsMap.values()) {
+            total.setOrderCount(total.getOrderCount() + stats.getOrderCount());
+            total.setValidOrderCount(total.getValidOrderCount() + stats.getValidOrderCount());
+            total.setTurnover(total.getTurnover().add(stats.getTurnover()));
+        }
+        Integer totalNewUsers = newUserMap.values().stream().reduce(0, Integer::sum);
+        BusinessDataVO businessDataVO = getBusinessData(total, totalNewUsers);
         //2. 通过POI将数据写入到Excel中
         InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
-        // 创建Excel对象
+        SXSSFWorkbook excel = null;
         try {
-            XSSFWorkbook excel = new XSSFWorkbook(in);
-            XSSFSheet sheet = excel.getSheet("Sheet1");
+            XSSFWorkbook template = new XSSFWorkbook(in);
+            XSSFSheet templateSheet = template.getSheet("Sheet1");
             // 填充数据-时间
-            sheet.getRow(1).getCell(1).setCellValue("时间："+dateBegin + "至" + dateEnd);
+            templateSheet.getRow(1).getCell(1).setCellValue("时间："+dateBegin + "至" + dateEnd);
             // 填充数据-概览数据
-            sheet.getRow(3).getCell(2).setCellValue(businessDataVO.getTurnover());
-            sheet.getRow(3).getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());
-            sheet.getRow(3).getCell(6).setCellValue(businessDataVO.getNewUsers());
-            sheet.getRow(4).getCell(2).setCellValue(businessDataVO.getValidOrderCount());
-            sheet.getRow(4).getCell(4).setCellValue(businessDataVO.getUnitPrice());
+            templateSheet.getRow(3).getCell(2).setCellValue(businessDataVO.getTurnover());
+            templateSheet.getRow(3).getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());
+            templateSheet.getRow(3).getCell(6).setCellValue(businessDataVO.getNewUsers());
+            templateSheet.getRow(4).getCell(2).setCellValue(businessDataVO.getValidOrderCount());
+            templateSheet.getRow(4).getCell(4).setCellValue(businessDataVO.getUnitPrice());
+            // 记下模板中明细行的样式，再移除模板自带的明细行，明细行改由流式写入，行数不再受模板限制
+            XSSFRow templateRow = templateSheet.getRow(DETAIL_ROW_START);
+            short rowHeight = templateRow.getHeight();
+            CellStyle[] detailStyles = new CellStyle[DETAIL_COLUMN_COUNT + 1];
+            for (int j = 1; j <= DETAIL_COLUMN_COUNT; j++) {
+                detailStyles[j] = templateRow.getCell(j).getCellStyle();
+            }
+            for (int i = templateSheet.getLastRowNum(); i >= DETAIL_ROW_START; i--) {
+                XSSFRow row = templateSheet.getRow(i);
+                if (row != null) {
+                    templateSheet.removeRow(row);
+                }
+            }
+            // 基于模板创建流式Excel对象，内存中只保留最近的若干行
+            excel = new SXSSFWorkbook(template, ROW_ACCESS_WINDOW_SIZE);
+            Sheet sheet = excel.getSheet("Sheet1");
             // 填充数据-明细数据
-            for (int i = 0; i < 30; i++) {
-                LocalDate date = dateBegin.plusDays(i);
-                // 查询某一天的明细数据
-                BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-                sheet.getRow(7 + i).getCell(1).setCellValue(date.toString());
-                sheet.getRow(7 + i).getCell(2).setCellValue(businessData.getTurnover());
-                sheet.getRow(7 + i).getCell(3).setCellValue(businessData.getValidOrderCount());
-                sheet.getRow(7 + i).getCell(4).setCellValue(businessData.getOrderCompletionRate());
-                sheet.getRow(7 + i).getCell(5).setCellValue(businessData.getUnitPrice());
-                sheet.getRow(7 + i).getCell(6).setCellValue(businessData.getNewUsers());
+            for (int i = 0; i < dateList.size(); i++) {
+                LocalDate date = dateList.get(i);
+                DailyOrderStats stats = statsMap.get(date);
+                BusinessDataVO businessData = getBusinessData(stats, newUserMap.getOrDefault(date, 0));
+                Row row = sheet.createRow(DETAIL_ROW_START + i);
+                row.setHeight(rowHeight);
+                createCell(row, 1, detailStyles).setCellValue(date.toString());
+                createCell(row, 2, detailStyles).setCellValue(businessData.getTurnover());
+                createCell(row, 3, detailStyles).setCellValue(businessData.getValidOrderCount());
+                createCell(row, 4, detailStyles).setCellValue(businessData.getOrderCompletionRate());
+                createCell(row, 5, detailStyles).setCellValue(businessData.getUnitPrice());
+                createCell(row, 6, detailStyles).setCellValue(businessData.getNewUsers());
+            }
+            if (withOrders) {
+                writeOrderSheet(excel, dateBegin, dateEnd);
             }
             ServletOutputStream out = response.getOutputStream();
             excel.write(out);
@@ -233,6 +324,108 @@ public class ReportServiceImpl implements ReportService {
             excel.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (excel != null) {
+                // 删除流式写入产生的临时文件
+                excel.dispose();
+            }
+        }
+    }
+
+    /**
+     * 分批查询区间内的订单，流式写入订单明细工作表
+     * @param excel
+     * @param begin
+     * @param end
+     */
+    private void writeOrderSheet(SXSSFWorkbook excel, LocalDate begin, LocalDate end) {
+        Sheet sheet = excel.createSheet("订单明细");
+        String[] titles = {"订单号", "下单时间", "订单状态", "实收金额", "收货人", "手机号", "地址", "菜品"};
+        Row titleRow = sheet.createRow(0);
+        for (int j = 0; j < titles.length; j++) {
+            titleRow.createCell(j).setCellValue(titles[j]);
+        }
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
+        int rowIndex = 1;
+        Long lastId = 0L;
+        while (true) {
+            // 按订单id顺序分批查询，每批只在内存中保留一页订单
+            List<Orders> ordersList = orderMapper.listByOrderTimeAfterId(beginTime, endTime, lastId, ORDER_BATCH_SIZE);
+            if (ordersList.isEmpty()) {
+                break;
+            }
+            // 一次查询出本批订单的明细
+            List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+            Map<Long, List<OrderDetail>> orderDetailMap = orderDetailMapper.getByOrderIds(orderIds).stream()
+                    .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+            for (Orders orders : ordersList) {
+                String orderDishes = orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()).stream()
+                        .map(x -> x.getName() + "*" + x.getNumber() + ";")
+                        .collect(Collectors.joining());
+                Row row = sheet.createRow(rowIndex++);
+                row.createCell(0).setCellValue(orders.getNumber());
+                row.createCell(1).setCellValue(orders.getOrderTime() == null ? "" : orders.getOrderTime().toString());
+                row.createCell(2).setCellValue(getStatusName(orders.getStatus()));
+                row.createCell(3).setCellValue(orders.getAmount() == null ? 0.0 : orders.getAmount().doubleValue());
+                row.createCell(4).setCellValue(orders.getConsignee());
+                row.createCell(5).setCellValue(orders.getPhone());
+                row.createCell(6).setCellValue(orders.getAddress());
+                row.createCell(7).setCellValue(orderDishes);
+            }
+            lastId = ordersList.get(ordersList.size() - 1).getId();
+        }
+    }
+
+    /**
+     * 根据每日订单统计计算营业数据
+     * @param stats
+     * @param newUsers
+     * @return
+     */
+    private BusinessDataVO getBusinessData(DailyOrderStats stats, Integer newUsers) {
+        Integer totalOrderCount = stats == null ? 0 : stats.getOrderCount();
+        Integer validOrderCount = stats == null ? 0 : stats.getValidOrderCount();
+        Double turnover = stats == null ? 0.0 : stats.getTurnover().doubleValue();
+        Double unitPrice = 0.0;
+        Double orderCompletionRate = 0.0;
+        if (totalOrderCount != 0 && validOrderCount != 0) {
+            //订单完成率
+            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
+            //平均客单价
+            unitPrice = turnover / validOrderCount;
+        }
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
+    }
+
+    /**
+     * 创建单元格并套用模板样式
+     * @param row
+     * @param column
+     * @param styles
+     * @return
+     */
+    private Cell createCell(Row row, int column, CellStyle[] styles) {
+        Cell cell = row.createCell(column);
+        cell.setCellStyle(styles[column]);
+        return cell;
+    }
+
+    /**
+     * 获取订单状态名称
+     * @param status
+     * @return
+     */
+    private String getStatusName(Integer status) {
+        if (status == null || status < 1 || status >= ORDER_STATUS_NAMES.length) {
+            return "";
         }
+        return ORDER_STATUS_NAMES[status];
     }
 }
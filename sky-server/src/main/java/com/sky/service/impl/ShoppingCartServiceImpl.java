@@ -1,5 +1,6 @@
 package com.sky.service.impl;
 
+import com.sky.cart.ShoppingCartStore;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartAIDTO;
 import com.sky.dto.ShoppingCartDTO;
@@ -8,7 +9,6 @@ import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -22,7 +22,7 @@ import java.util.List;
 @Slf4j
 public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
 
     @Autowired
     private DishMapper dishMapper;
@@ -40,13 +40,8 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         shoppingCart.setUserId(BaseContext.getCurrentId());
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        if( list != null&& list.size() > 0){
-            // 如果在，数量加一
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
-        } else {
+        // 如果在，数量加一
+        if (!shoppingCartStore.increment(shoppingCart)) {
             // 如果不在，插入一条数据到购物车
             // 判断本次添加到购物车的是菜品还是套餐
             Long dishId = shoppingCartDTO.getDishId();
@@ -66,7 +61,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
             }
             shoppingCart.setNumber(1);
             shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+            shoppingCartStore.add(shoppingCart);
         }
     }
     /**
@@ -75,9 +70,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     public List<ShoppingCart> showShoppingCart() {
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder().userId(userId).build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        return list;
+        return shoppingCartStore.list(userId);
     }
     /**
      * 清空购物车
@@ -85,7 +78,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     public void cleanShoppingCart() {
         Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.deleleByUserId(userId);
+        shoppingCartStore.clean(userId);
     }
     /**
      * 删除购物车中一个商品
@@ -97,21 +90,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         //设置查询条件，查询当前登录用户的购物车数据
         shoppingCart.setUserId(BaseContext.getCurrentId());
 
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-
-        if(list != null && list.size() > 0){
-            shoppingCart = list.get(0);
-
-            Integer number = shoppingCart.getNumber();
-            if(number == 1){
-                //当前商品在购物车中的份数为1，直接删除当前记录
-                shoppingCartMapper.deleteById(shoppingCart.getId());
-            }else {
-                //当前商品在购物车中的份数不为1，修改份数即可
-                shoppingCart.setNumber(shoppingCart.getNumber() - 1);
-                shoppingCartMapper.updateNumberById(shoppingCart);
-            }
-        }
+        shoppingCartStore.decrement(shoppingCart);
     }
 
     /**
@@ -140,17 +119,12 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         }
         shoppingCart.setDishFlavor(shoppingCartAIDTO.getDishFlavor());
         shoppingCart.setUserId(BaseContext.getCurrentId());
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        if( list != null&& list.size() > 0){
-            // 如果在，数量加一
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
-        } else {
+        // 如果在，数量加一
+        if (!shoppingCartStore.increment(shoppingCart)) {
             // 如果不在，插入一条数据到购物车
             shoppingCart.setNumber(1);
             shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+            shoppingCartStore.add(shoppingCart);
         }
     }
 
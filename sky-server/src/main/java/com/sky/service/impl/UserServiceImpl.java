@@ -6,6 +6,7 @@ import com.sky.constant.MessageConstant;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
 import com.sky.exception.LoginFailedException;
+import com.sky.mapper.DailyStatsMapper;
 import com.sky.mapper.UserMapper;
 import com.sky.properties.WeChatProperties;
 import com.sky.service.UserService;
@@ -21,11 +22,14 @@ import java.util.Map;
 @Service
 @Slf4j
 public class UserServiceImpl implements UserService {
-    public static final String WX_LOGIN = "https://api.weixin.qq.com/sns/jscode2session";
+    //微信登录接口路径，接口地址由sky.wechat.login-base-url配置
+    public static final String WX_LOGIN = "/sns/jscode2session";
     @Autowired
     private WeChatProperties weChatProperties;
     @Autowired
     private UserMapper userMapper;
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
 
     public User login(UserLoginDTO userLoginDTO) {
         String openid = getOpenid(userLoginDTO.getCode());
@@ -39,6 +43,8 @@ public class UserServiceImpl implements UserService {
                     .createTime(LocalDateTime.now())
                     .build();
             userMapper.insert(user);
+            // 当日新增用户数加一
+            dailyStatsMapper.incrementNewUser(user.getCreateTime().toLocalDate());
         }
         return user;
     }
@@ -49,7 +55,7 @@ public class UserServiceImpl implements UserService {
         map.put("secret", weChatProperties.getSecret());
         map.put("js_code", code);
         map.put("grant_type", "authorization_code");
-        String json = HttpClientUtil.doGet(WX_LOGIN, map);
+        String json = HttpClientUtil.doGet(weChatProperties.getLoginBaseUrl() + WX_LOGIN, map);
         JSONObject jsonObject = JSON.parseObject(json);
         String openid = jsonObject.getString("openid");
         return openid;
@@ -0,0 +1,35 @@
+package com.sky.task;
+
+import com.sky.annotation.SchedulerLock;
+import com.sky.service.DailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * 定时任务类，定时校正每日统计数据
+ */
+@Component
+@Slf4j
+public class DailyStatsTask {
+    //每次校正最近几天的统计数据，覆盖订单状态的延迟变更
+    private static final int COMPACT_DAYS = 7;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    /**
+     * 根据订单表重新汇总最近几天的统计数据，修正增量更新产生的偏差
+     */
+    @SchedulerLock(value = "dailyStatsTask.compactDailyStats", minHoldTime = 60000)
+    @Scheduled(cron = "0 0 2 * * ?")// 每天凌晨两点执行一次，在自动完成派送中订单之后
+    public void compactDailyStats() {
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(COMPACT_DAYS - 1);
+        log.info("定时校正每日统计数据：{}~{}", begin, end);
+        dailyStatsService.rebuild(begin, end);
+    }
+}
@@ -0,0 +1,30 @@
+package com.sky.task;
+
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.pool.PoolStats;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时任务类，定时检查共享http连接池的使用情况
+ */
+@Component
+@Slf4j
+public class HttpClientPoolTask {
+
+    /**
+     * 有请求在等待连接或连接已全部借出时提示连接池不足，其他情况只输出debug日志
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logPoolStats() {
+        PoolStats stats = HttpClientUtil.getPoolStats();
+        if (stats.getPending() > 0 || stats.getLeased() >= stats.getMax()) {
+            log.warn("http连接池不足：已借出{}，空闲{}，等待{}，上限{}",
+                    stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+        } else {
+            log.debug("http连接池：已借出{}，空闲{}，等待{}，上限{}",
+                    stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.sky.task;
 
+import com.sky.annotation.SchedulerLock;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTaskProperties;
 import com.sky.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,48 +12,48 @@ import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * 定时任务类，定时处理订单状态
+ * 待付款订单的超时取消由OrderTimeoutQueue处理
  */
 @Component
 @Slf4j
 public class OrderTask {
     @Autowired
     private OrderMapper orderMapper;
-
-    /**
-     *处理超时订单
-     */
-    @Scheduled(cron = "0 * * * * ?")// 每分钟执行一次
-    public void processTimeoutOrder(){
-        log.info("定时处理超时订单", LocalDateTime.now());
-
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, LocalDateTime.now().plusMinutes(-15));
-
-        if(ordersList != null && ordersList.size() > 0 ){
-            ordersList.forEach(orders -> {
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason("订单超时，自动取消");
-                orders.setCancelTime(LocalDateTime.now());
-                orderMapper.update(orders);
-            });
-        }
-    }
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderTaskProperties orderTaskProperties;
 
     /**
      * 处理一直处于派送中的订单
+     * 按id分页扫描，每页在一个短事务中批量修改，不会长时间占用连接
      */
+    @SchedulerLock(value = "orderTask.processCompletedOrder", minHoldTime = 60000)
     @Scheduled(cron = "0 0 1 * * ?")// 每天凌晨一点执行一次
     public void processCompletedOrder(){
-        log.info("定时处理一直处于派送中的订单", LocalDateTime.now());
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, LocalDateTime.now().plusMinutes(-60));
-        if(ordersList != null && ordersList.size() > 0 ){
-            ordersList.forEach(orders -> {
-                orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
-            });
-        }
+        log.info("定时处理一直处于派送中的订单：{}", LocalDateTime.now());
+        long start = System.currentTimeMillis();
+        LocalDateTime orderTime = LocalDateTime.now().plusMinutes(-60);
+        int chunkSize = orderTaskProperties.getChunkSize();
+        long lastId = 0;
+        int scanned = 0;
+        int completed = 0;
+        List<Orders> ordersList;
+        do {
+            ordersList = orderMapper.listByStatusAndOrderTimeLTAfterId(Orders.DELIVERY_IN_PROGRESS, orderTime, lastId, chunkSize);
+            if (ordersList.isEmpty()) {
+                break;
+            }
+            List<Long> ids = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+            completed += orderService.autoComplete(ids);
+            scanned += ids.size();
+            lastId = ids.get(ids.size() - 1);
+        } while (ordersList.size() == chunkSize);
+        log.info("派送中订单处理完成：扫描{}个，完成{}个，耗时{}ms", scanned, completed, System.currentTimeMillis() - start);
     }
 
 }
@@ -0,0 +1,136 @@
+package com.sky.task;
+
+import com.sky.annotation.SchedulerLock;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTaskProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 订单支付超时延迟队列
+ * 下单时把订单id放入redis有序集合，分数为超时时间，每秒取出已到期的订单批量取消
+ * 取出和删除在同一个lua脚本中完成，多个节点同时轮询时每个订单只会被一个节点取出
+ * 启动时扫描一次待付款订单重新放入队列，补上进程停止期间和取出后未处理完的订单
+ */
+@Component
+@Slf4j
+public class OrderTimeoutQueue {
+
+    //订单支付超时时间
+    public static final Duration PAYMENT_TIMEOUT = Duration.ofMinutes(15);
+
+    private static final String QUEUE_KEY = "order:timeout";
+    //每次最多取出的订单数
+    private static final int BATCH_SIZE = 100;
+
+    //取出分数不大于ARGV[1]的最多ARGV[2]个订单并从集合中删除
+    private static final DefaultRedisScript<List> POLL_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "if #ids > 0 then redis.call('ZREM', KEYS[1], unpack(ids)) end " +
+            "return ids", List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderTaskProperties orderTaskProperties;
+
+    /**
+     * 订单在下单时间加上超时时间后自动取消
+     * @param orderId
+     * @param orderTime
+     */
+    public void schedule(Long orderId, LocalDateTime orderTime) {
+        stringRedisTemplate.opsForZSet().add(QUEUE_KEY, orderId.toString(), deadline(orderTime));
+    }
+
+    /**
+     * 订单已支付或已取消，不再需要超时取消
+     * @param orderId
+     */
+    public void remove(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(QUEUE_KEY, orderId.toString());
+    }
+
+    /**
+     * 取消已到期的订单，只取消仍处于待付款状态的订单
+     */
+    @SchedulerLock("orderTimeoutQueue.processTimeoutOrder")
+    @Scheduled(fixedDelay = 1000)
+    public void processTimeoutOrder() {
+        long start = System.currentTimeMillis();
+        int expired = 0;
+        int cancelled = 0;
+        List<Long> ids;
+        do {
+            ids = poll();
+            if (ids.isEmpty()) {
+                break;
+            }
+            expired += ids.size();
+            cancelled += orderMapper.updateStatusByIds(ids, Orders.PENDING_PAYMENT, Orders.CANCELLED,
+                    "订单超时，自动取消", LocalDateTime.now());
+        } while (ids.size() == BATCH_SIZE);
+        if (expired > 0) {
+            log.info("超时取消订单：到期{}个，取消{}个，耗时{}ms", expired, cancelled, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 启动时把所有待付款订单重新放入队列，已过期的订单会在下一次轮询时取消
+     * 按id分页扫描，每页一次写入redis
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        int chunkSize = orderTaskProperties.getChunkSize();
+        long lastId = 0;
+        int recovered = 0;
+        List<Orders> ordersList;
+        do {
+            ordersList = orderMapper.listByStatusAndOrderTimeLTAfterId(Orders.PENDING_PAYMENT, now, lastId, chunkSize);
+            if (ordersList.isEmpty()) {
+                break;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples = ordersList.stream()
+                    .map(orders -> new DefaultTypedTuple<>(orders.getId().toString(), (double) deadline(orders.getOrderTime())))
+                    .collect(Collectors.toSet());
+            stringRedisTemplate.opsForZSet().add(QUEUE_KEY, tuples);
+            recovered += ordersList.size();
+            lastId = ordersList.get(ordersList.size() - 1).getId();
+        } while (ordersList.size() == chunkSize);
+        log.info("恢复待付款订单的超时取消：{}个，耗时{}ms", recovered, System.currentTimeMillis() - start);
+    }
+
+    private long deadline(LocalDateTime orderTime) {
+        return orderTime.plus(PAYMENT_TIMEOUT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private List<Long> poll() {
+        List<String> ids = stringRedisTemplate.execute(POLL_SCRIPT, Collections.singletonList(QUEUE_KEY),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(BATCH_SIZE));
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+}
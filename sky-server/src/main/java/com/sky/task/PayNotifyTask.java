@@ -0,0 +1,24 @@
+package com.sky.task;
+
+import com.sky.annotation.SchedulerLock;
+import com.sky.service.PayNotifyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时任务类，补处理队列满或进程重启时遗留的支付回调事件
+ */
+@Component
+@Slf4j
+public class PayNotifyTask {
+    @Autowired
+    private PayNotifyService payNotifyService;
+
+    @SchedulerLock("payNotifyTask.recoverPayNotify")
+    @Scheduled(fixedDelay = 30000)// 启动时立即执行一次，之后每30秒执行一次
+    public void recoverPayNotify() {
+        payNotifyService.recoverPending();
+    }
+}
@@ -0,0 +1,47 @@
+package com.sky.task;
+
+import com.sky.cart.RedisShoppingCartStore;
+import com.sky.properties.ShoppingCartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 定时任务类，把redis中修改过的购物车回写到购物车表
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.shopping-cart", name = "store", havingValue = "redis")
+@Slf4j
+public class ShoppingCartFlushTask {
+
+    @Autowired
+    private RedisShoppingCartStore redisShoppingCartStore;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+
+    @Scheduled(fixedDelayString = "${sky.shopping-cart.flush-delay:5000}")
+    public void flushShoppingCart() {
+        if (!shoppingCartProperties.isWriteBehind()) {
+            return;
+        }
+        List<Long> userIds;
+        boolean failed = false;
+        do {
+            userIds = redisShoppingCartStore.popDirtyUsers(shoppingCartProperties.getFlushBatchSize());
+            for (Long userId : userIds) {
+                try {
+                    redisShoppingCartStore.flush(userId);
+                } catch (Exception e) {
+                    log.error("回写用户{}的购物车失败，下次重试", userId, e);
+                    redisShoppingCartStore.markDirty(userId);
+                    failed = true;
+                }
+            }
+            // 有失败时本轮结束，避免反复取到同一个用户
+        } while (!failed && userIds.size() == shoppingCartProperties.getFlushBatchSize());
+    }
+}
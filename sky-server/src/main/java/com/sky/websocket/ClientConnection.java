@@ -0,0 +1,93 @@
+package com.sky.websocket;
+
+import javax.websocket.Session;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个客户端连接和它的待发送消息队列
+ * 同一个连接同一时间只能有一条异步消息在发送，上一条发送完成后在回调中发送下一条
+ */
+class ClientConnection {
+
+    private final String sid;
+    private final Session session;
+    private final BlockingQueue<String> queue;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    //已订阅的主题，注销时据此从主题索引中移除
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final WebSocketSessionRegistry registry;
+
+    ClientConnection(String sid, Session session, int queueCapacity, long sendTimeout, WebSocketSessionRegistry registry) {
+        this.sid = sid;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.registry = registry;
+        session.getAsyncRemote().setSendTimeout(sendTimeout);
+    }
+
+    String getSid() {
+        return sid;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    Set<String> getTopics() {
+        return topics;
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 放入待发送队列，不等待发送完成
+     * @param message
+     * @return 队列已满时返回false
+     */
+    boolean offer(String message) {
+        if (!queue.offer(message)) {
+            return false;
+        }
+        sendNext();
+        return true;
+    }
+
+    private void sendNext() {
+        if (!sending.compareAndSet(false, true)) {
+            return;
+        }
+        String message = queue.poll();
+        if (message == null) {
+            sending.set(false);
+            // 释放标记前可能有新消息入队，再检查一次
+            if (!queue.isEmpty()) {
+                sendNext();
+            }
+            return;
+        }
+        if (!session.isOpen()) {
+            registry.evict(this, "连接已关闭");
+            return;
+        }
+        try {
+            session.getAsyncRemote().sendText(message, result -> {
+                if (!result.isOK()) {
+                    registry.evict(this, "发送失败：" + result.getException());
+                    return;
+                }
+                registry.recordSent();
+                sending.set(false);
+                sendNext();
+            });
+        } catch (RuntimeException e) {
+            // 检查之后连接可能已关闭，发送时直接抛出异常，断开这个连接，不影响发给其他客户端
+            registry.evict(this, "发送失败：" + e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.sky.websocket;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.HandshakeResponse;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebSocket握手时校验jwt令牌
+ * 浏览器的WebSocket不能设置请求头，令牌可以放在token参数中，也可以放在和http接口相同的请求头中
+ * 先按管理端令牌校验，再按用户端令牌校验，通过后把角色和id保存在会话属性中，未通过的连接在建立后立即断开
+ * 配置器由容器创建，不经过spring注入，所以jwt配置保存在静态变量中
+ */
+@Component
+@Slf4j
+public class WebSocketAuthConfigurator extends ServerEndpointConfig.Configurator {
+
+    //会话属性：角色
+    public static final String ROLE = "role";
+    //会话属性：员工id或用户id
+    public static final String PRINCIPAL_ID = "principalId";
+
+    public static final String ROLE_ADMIN = "admin";
+    public static final String ROLE_USER = "user";
+
+    private static JwtProperties jwtProperties;
+
+    @Autowired
+    public void setJwtProperties(JwtProperties jwtProperties) {
+        WebSocketAuthConfigurator.jwtProperties = jwtProperties;
+    }
+
+    @Override
+    public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+        Map<String, Object> properties = sec.getUserProperties();
+        String adminToken = first(request.getParameterMap().get("token"));
+        String userToken = adminToken;
+        if (adminToken == null) {
+            adminToken = first(request.getHeaders().get(jwtProperties.getAdminTokenName()));
+            userToken = first(request.getHeaders().get(jwtProperties.getUserTokenName()));
+        }
+        Long empId = parse(jwtProperties.getAdminSecretKey(), adminToken, JwtClaimsConstant.EMP_ID);
+        if (empId != null) {
+            properties.put(ROLE, ROLE_ADMIN);
+            properties.put(PRINCIPAL_ID, empId);
+            return;
+        }
+        Long userId = parse(jwtProperties.getUserSecretKey(), userToken, JwtClaimsConstant.USER_ID);
+        if (userId != null) {
+            properties.put(ROLE, ROLE_USER);
+            properties.put(PRINCIPAL_ID, userId);
+        }
+    }
+
+    private Long parse(String secretKey, String token, String claim) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            Claims claims = JwtUtil.parseJWT(secretKey, token);
+            Object id = claims.get(claim);
+            return id == null ? null : Long.valueOf(id.toString());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String first(List<String> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,203 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket节点间消息总线
+ * 每个节点只持有自己的连接，按主题发送的消息通过redis频道发布一次，各节点收到后发送给本节点订阅了该主题的连接
+ * 发布线程把一小段时间内的消息合并为一条redis消息，同一批中主题和内容都相同的消息只保留一条
+ * 每条redis消息带有发送节点和节点内递增的序号，接收方据此发现丢失的消息
+ */
+@Component
+@Slf4j
+public class WebSocketClusterBus implements MessageListener {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private WebSocketSessionRegistry registry;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+    private final AtomicLong sequence = new AtomicLong();
+    //每个发送节点最后收到的序号
+    private final Map<String, Long> lastSequences = new ConcurrentHashMap<>();
+
+    private BlockingQueue<String[]> pending;
+    private Thread publisher;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong publishFailed = new AtomicLong();
+    private final AtomicLong localOnly = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong gaps = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (!webSocketProperties.isClusterEnabled()) {
+            return;
+        }
+        pending = new ArrayBlockingQueue<>(webSocketProperties.getClusterQueueCapacity());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(webSocketProperties.getClusterChannel()));
+        publisher = new Thread(this::publishLoop, "websocket-cluster-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publisher != null) {
+            publisher.interrupt();
+        }
+    }
+
+    /**
+     * 发送给所有节点上订阅了该主题的连接，不等待发送完成
+     * @param topic
+     * @param message
+     */
+    public void publish(String topic, String message) {
+        if (!webSocketProperties.isClusterEnabled()) {
+            registry.publish(topic, message);
+            return;
+        }
+        if (!pending.offer(new String[]{topic, message})) {
+            // 发布线程积压时至少保证本节点的连接能收到
+            localOnly.incrementAndGet();
+            registry.publish(topic, message);
+        }
+    }
+
+    private void publishLoop() {
+        List<String[]> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(webSocketProperties.getCoalesceDelay());
+                while (batch.size() < webSocketProperties.getCoalesceMaxSize()) {
+                    String[] item = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (item == null) {
+                        break;
+                    }
+                    batch.add(item);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("发布WebSocket消息异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<String[]> batch) {
+        // 合并同一批中主题和内容都相同的消息
+        Map<String, String[]> unique = new LinkedHashMap<>();
+        for (String[] item : batch) {
+            unique.putIfAbsent(item[0] + '\n' + item[1], item);
+        }
+        coalesced.addAndGet(batch.size() - unique.size());
+
+        JSONArray messages = new JSONArray();
+        for (String[] item : unique.values()) {
+            registry.publish(item[0], item[1]);
+            JSONObject message = new JSONObject();
+            message.put("topic", item[0]);
+            message.put("payload", item[1]);
+            messages.add(message);
+        }
+
+        JSONObject envelope = new JSONObject();
+        envelope.put("node", nodeId);
+        envelope.put("seq", sequence.incrementAndGet());
+        envelope.put("messages", messages);
+        try {
+            stringRedisTemplate.convertAndSend(webSocketProperties.getClusterChannel(), envelope.toJSONString());
+            published.addAndGet(messages.size());
+            publishedBatches.incrementAndGet();
+        } catch (Exception e) {
+            // 序号已占用，其他节点会把这一批记为丢失
+            publishFailed.addAndGet(messages.size());
+            log.warn("发布WebSocket消息到redis失败，{}条消息只在本节点发送", messages.size(), e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject envelope = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        String node = envelope.getString("node");
+        if (nodeId.equals(node)) {
+            // 本节点发布时已经发送过
+            return;
+        }
+        long seq = envelope.getLongValue("seq");
+        Long last = lastSequences.put(node, seq);
+        if (last != null && seq > last + 1) {
+            gaps.addAndGet(seq - last - 1);
+            log.warn("节点{}的WebSocket消息丢失：序号{}~{}", node, last + 1, seq - 1);
+        }
+        JSONArray messages = envelope.getJSONArray("messages");
+        for (int i = 0; i < messages.size(); i++) {
+            JSONObject item = messages.getJSONObject(i);
+            registry.publish(item.getString("topic"), item.getString("payload"));
+        }
+        received.addAndGet(messages.size());
+    }
+
+    /**
+     * 定时输出节点间转发情况，有消息丢失或发布失败时提示
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logStats() {
+        if (!webSocketProperties.isClusterEnabled()) {
+            return;
+        }
+        long publishedCount = published.getAndSet(0);
+        long batchCount = publishedBatches.getAndSet(0);
+        long coalescedCount = coalesced.getAndSet(0);
+        long failedCount = publishFailed.getAndSet(0);
+        long localOnlyCount = localOnly.getAndSet(0);
+        long receivedCount = received.getAndSet(0);
+        long gapCount = gaps.getAndSet(0);
+        if (failedCount > 0 || localOnlyCount > 0 || gapCount > 0) {
+            log.warn("WebSocket节点间转发：发布{}条（{}批），合并{}条，发布失败{}条，只在本节点发送{}条，收到{}条，丢失{}批",
+                    publishedCount, batchCount, coalescedCount, failedCount, localOnlyCount, receivedCount, gapCount);
+        } else {
+            log.info("WebSocket节点间转发：发布{}条（{}批），合并{}条，收到{}条，待发布{}条",
+                    publishedCount, batchCount, coalescedCount, receivedCount, pending.size());
+        }
+    }
+}
@@ -1,33 +1,100 @@
 package com.sky.websocket;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.WebSocketTopicConstant;
+import com.sky.entity.Chat;
+import com.sky.exception.BaseException;
+import com.sky.service.ChatService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * WebSocket服务
+ * 每个连接由容器创建一个端点实例，不经过spring注入，所以注册表保存在静态变量中
+ * 握手时由WebSocketAuthConfigurator校验jwt令牌，未登录的连接建立后立即断开
+ * 建立连接时通过topics参数订阅主题，多个主题用逗号分隔，不传时管理端订阅管理端主题，用户订阅自己的用户主题
+ * 连接建立后可以发送{"type":"subscribe","topic":"..."}或{"type":"unsubscribe","topic":"..."}增减订阅
+ * 发送{"type":"chat","orderId":...,"content":"..."}发送聊天消息，推送给订阅了order:{orderId}的客户端
+ * 管理端可以订阅所有主题、在所有订单中以客服身份发送消息，用户只能订阅和发送自己的订单和自己的用户主题
  */
 @Component
-@ServerEndpoint("/ws/{sid}")
+@ServerEndpoint(value = "/ws/{sid}", configurator = WebSocketAuthConfigurator.class)
+@Slf4j
 public class WebSocketServer {
 
     //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    private static WebSocketSessionRegistry registry;
+    //转发到其他节点
+    private static WebSocketClusterBus clusterBus;
+
+    @Autowired
+    public void setRegistry(WebSocketSessionRegistry registry) {
+        WebSocketServer.registry = registry;
+    }
+
+    //处理聊天消息
+    private static ChatService chatService;
+
+    //会话属性：已确认属于当前用户的订单id，避免每条消息都查询订单
+    private static final String OWNED_ORDERS = "ownedOrders";
+
+    @Autowired
+    public void setClusterBus(WebSocketClusterBus clusterBus) {
+        WebSocketServer.clusterBus = clusterBus;
+    }
+
+    @Autowired
+    public void setChatService(ChatService chatService) {
+        WebSocketServer.chatService = chatService;
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        if (role(session) == null) {
+            log.info("客户端：{}未登录，断开连接", sid);
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "未登录"));
+            } catch (Exception e) {
+                log.debug("关闭客户端{}的连接失败", sid, e);
+            }
+            return;
+        }
+        List<String> topics = session.getRequestParameterMap().get("topics");
+        List<String> subscriptions = new ArrayList<>();
+        if (topics == null || topics.isEmpty()) {
+            // 管理端页面不传主题，保持原来接收来单提醒和催单的行为
+            subscriptions.add(isAdmin(session) ? WebSocketTopicConstant.ADMIN
+                    : WebSocketTopicConstant.user(principalId(session)));
+        } else {
+            for (String value : topics) {
+                for (String topic : value.split(",")) {
+                    topic = topic.trim();
+                    if (!topic.isEmpty() && canSubscribe(session, topic)) {
+                        subscriptions.add(topic);
+                    }
+                }
+            }
+        }
+        log.info("客户端：{}建立连接，订阅{}", key(session, sid), subscriptions);
+        registry.register(key(session, sid), session, subscriptions);
     }
 
     /**
@@ -36,8 +103,117 @@ public class WebSocketServer {
      * @param message 客户端发送过来的消息
      */
     @OnMessage
-    public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+    public void onMessage(String message, Session session, @PathParam("sid") String sid) {
+        if (role(session) == null) {
+            return;
+        }
+        String key = key(session, sid);
+        JSONObject jsonObject;
+        try {
+            jsonObject = JSON.parseObject(message);
+        } catch (Exception e) {
+            log.info("收到来自客户端：{}的信息:{}", key, message);
+            return;
+        }
+        String type = jsonObject == null ? null : jsonObject.getString("type");
+        String topic = jsonObject == null ? null : jsonObject.getString("topic");
+        if ("subscribe".equals(type) && topic != null) {
+            if (canSubscribe(session, topic)) {
+                registry.subscribe(key, topic);
+            } else {
+                sendError(key, MessageConstant.CHAT_ACCESS_DENIED);
+            }
+        } else if ("unsubscribe".equals(type) && topic != null) {
+            registry.unsubscribe(key, topic);
+        } else if ("chat".equals(type)) {
+            onChat(jsonObject, session, key);
+        } else {
+            log.info("收到来自客户端：{}的信息:{}", key, message);
+        }
+    }
+
+    private void onChat(JSONObject jsonObject, Session session, String key) {
+        Long orderId = jsonObject.getLong("orderId");
+        if (!canAccessOrder(session, orderId)) {
+            sendError(key, MessageConstant.CHAT_ACCESS_DENIED);
+            return;
+        }
+        // 发送者和角色取自登录身份，不使用消息中的值
+        Chat chat = Chat.builder()
+                .orderId(orderId)
+                .customerId(principalId(session))
+                .sendRole(isAdmin(session) ? 1 : 0)
+                .content(jsonObject.getString("content"))
+                .build();
+        try {
+            chatService.sendChat(chat);
+        } catch (BaseException e) {
+            sendError(key, e.getMessage());
+        }
+    }
+
+    private void sendError(String key, String msg) {
+        JSONObject error = new JSONObject();
+        error.put("type", "error");
+        error.put("msg", msg);
+        registry.sendTo(key, error.toJSONString());
+    }
+
+    /**
+     * 管理端可以订阅所有主题，用户只能订阅自己的用户主题和自己订单的主题
+     */
+    private boolean canSubscribe(Session session, String topic) {
+        if (isAdmin(session)) {
+            return true;
+        }
+        if (topic.equals(WebSocketTopicConstant.user(principalId(session)))) {
+            return true;
+        }
+        if (topic.startsWith(WebSocketTopicConstant.ORDER_PREFIX)) {
+            try {
+                return canAccessOrder(session, Long.valueOf(topic.substring(WebSocketTopicConstant.ORDER_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean canAccessOrder(Session session, Long orderId) {
+        if (orderId == null) {
+            return false;
+        }
+        if (isAdmin(session)) {
+            return true;
+        }
+        Set<Long> ownedOrders = (Set<Long>) session.getUserProperties()
+                .computeIfAbsent(OWNED_ORDERS, k -> ConcurrentHashMap.newKeySet());
+        if (ownedOrders.contains(orderId)) {
+            return true;
+        }
+        if (chatService.isOrderOwner(orderId, principalId(session))) {
+            ownedOrders.add(orderId);
+            return true;
+        }
+        return false;
+    }
+
+    private String role(Session session) {
+        return (String) session.getUserProperties().get(WebSocketAuthConfigurator.ROLE);
+    }
+
+    private Long principalId(Session session) {
+        return (Long) session.getUserProperties().get(WebSocketAuthConfigurator.PRINCIPAL_ID);
+    }
+
+    private boolean isAdmin(Session session) {
+        return WebSocketAuthConfigurator.ROLE_ADMIN.equals(role(session));
+    }
+
+    // 注册表中的连接按身份区分，其他客户端使用相同的sid不会顶掉该连接
+    private String key(Session session, String sid) {
+        return role(session) + ":" + principalId(session) + ":" + sid;
     }
 
     /**
@@ -46,26 +222,40 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        if (role(session) == null) {
+            return;
+        }
+        log.info("连接断开:{}", key(session, sid));
+        registry.unregister(key(session, sid), session);
+    }
+
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable error) {
+        log.warn("客户端：{}连接异常：{}", sid, error.getMessage());
+        if (role(session) != null) {
+            registry.unregister(key(session, sid), session);
+        }
     }
 
     /**
-     * 群发
+     * 群发本节点的所有连接，只放入每个连接的待发送队列，不等待客户端接收
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+        registry.broadcast(message);
+    }
+
+    /**
+     * 发送给所有节点上订阅了该主题的客户端，消息只序列化一次
+     *
+     * @param topic
+     * @param message 字符串原样发送，其他对象转为json
+     */
+    public void sendToTopic(String topic, Object message) {
+        String text = message instanceof String ? (String) message : JSON.toJSONString(message);
+        clusterBus.publish(topic, text);
     }
 
 }
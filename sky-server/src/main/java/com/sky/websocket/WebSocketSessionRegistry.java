@@ -0,0 +1,233 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket连接注册表
+ * 连接按主题订阅消息，按主题建立索引，发送时只遍历订阅了该主题的连接
+ * 发送时只把消息放入每个连接的待发送队列，由异步发送回调依次发出，调用方不会被慢客户端阻塞
+ * 队列满或发送失败、超时的连接会被断开，客户端重连后重新注册
+ */
+@Component
+@Slf4j
+public class WebSocketSessionRegistry {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //每个连接最多订阅的主题数
+    private static final int MAX_TOPICS = 32;
+
+    private final Map<String, ClientConnection> connections = new ConcurrentHashMap<>();
+    //主题 -> 订阅了该主题的连接
+    private final Map<String, Set<ClientConnection>> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * 注册连接并订阅主题，同一个sid已有连接时断开旧连接
+     * @param sid
+     * @param session
+     * @param topics
+     */
+    public void register(String sid, Session session, Collection<String> topics) {
+        ClientConnection connection = new ClientConnection(sid, session,
+                webSocketProperties.getQueueCapacity(), webSocketProperties.getSendTimeout(), this);
+        ClientConnection old = connections.put(sid, connection);
+        if (old != null && old.getSession() != session) {
+            removeSubscriptions(old);
+            close(old, CloseReason.CloseCodes.NORMAL_CLOSURE, "同一客户端建立了新连接");
+        }
+        topics.forEach(topic -> subscribe(connection, topic));
+    }
+
+    /**
+     * 订阅主题
+     * @param sid
+     * @param topic
+     */
+    public void subscribe(String sid, String topic) {
+        ClientConnection connection = connections.get(sid);
+        if (connection != null) {
+            subscribe(connection, topic);
+        }
+    }
+
+    /**
+     * 取消订阅主题
+     * @param sid
+     * @param topic
+     */
+    public void unsubscribe(String sid, String topic) {
+        ClientConnection connection = connections.get(sid);
+        if (connection != null && connection.getTopics().remove(topic)) {
+            removeSubscriber(topic, connection);
+        }
+    }
+
+    /**
+     * 连接关闭时注销，只注销仍是当前会话的连接
+     * @param sid
+     * @param session
+     */
+    public void unregister(String sid, Session session) {
+        ClientConnection connection = connections.get(sid);
+        if (connection != null && connection.getSession() == session && connections.remove(sid, connection)) {
+            removeSubscriptions(connection);
+        }
+    }
+
+    /**
+     * 群发，只放入队列，立即返回
+     * @param message
+     */
+    public void broadcast(String message) {
+        for (ClientConnection connection : connections.values()) {
+            send(connection, message);
+        }
+    }
+
+    /**
+     * 发送给本节点上的某个连接，只放入队列，立即返回
+     * @param sid
+     * @param message
+     */
+    public void sendTo(String sid, String message) {
+        ClientConnection connection = connections.get(sid);
+        if (connection != null) {
+            send(connection, message);
+        }
+    }
+
+    /**
+     * 发送给订阅了该主题的连接，只放入队列，立即返回
+     * @param topic
+     * @param message 已序列化的消息，所有连接共用
+     * @return 接收的连接数
+     */
+    public int publish(String topic, String message) {
+        Set<ClientConnection> targets = subscribers.get(topic);
+        if (targets == null) {
+            return 0;
+        }
+        int count = 0;
+        for (ClientConnection connection : targets) {
+            send(connection, message);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    void send(ClientConnection connection, String message) {
+        if (connection.offer(message)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+            evict(connection, "待发送消息超过" + webSocketProperties.getQueueCapacity() + "条");
+        }
+    }
+
+    void recordSent() {
+        sent.incrementAndGet();
+    }
+
+    /**
+     * 断开接收过慢或发送失败的连接
+     * @param connection
+     * @param reason
+     */
+    void evict(ClientConnection connection, String reason) {
+        if (connections.remove(connection.getSid(), connection)) {
+            removeSubscriptions(connection);
+            evicted.incrementAndGet();
+            log.warn("断开客户端{}的连接：{}", connection.getSid(), reason);
+            close(connection, CloseReason.CloseCodes.TRY_AGAIN_LATER, "客户端接收过慢");
+        }
+    }
+
+    private void subscribe(ClientConnection connection, String topic) {
+        if (connection.getTopics().size() >= MAX_TOPICS) {
+            log.warn("客户端{}订阅的主题超过{}个，忽略主题{}", connection.getSid(), MAX_TOPICS, topic);
+            return;
+        }
+        if (connection.getTopics().add(topic)) {
+            // 在compute中加入，和移除最后一个订阅者时删除集合互斥
+            subscribers.compute(topic, (key, targets) -> {
+                Set<ClientConnection> result = targets == null ? ConcurrentHashMap.newKeySet() : targets;
+                result.add(connection);
+                return result;
+            });
+            // 订阅过程中连接已被注销时撤销订阅，避免索引中残留已断开的连接
+            if (connections.get(connection.getSid()) != connection) {
+                removeSubscriber(topic, connection);
+            }
+        }
+    }
+
+    private void removeSubscriptions(ClientConnection connection) {
+        for (String topic : connection.getTopics()) {
+            removeSubscriber(topic, connection);
+        }
+    }
+
+    private void removeSubscriber(String topic, ClientConnection connection) {
+        subscribers.computeIfPresent(topic, (key, targets) -> {
+            targets.remove(connection);
+            return targets.isEmpty() ? null : targets;
+        });
+    }
+
+    private void close(ClientConnection connection, CloseReason.CloseCode code, String reason) {
+        try {
+            connection.getSession().close(new CloseReason(code, reason));
+        } catch (Exception e) {
+            log.debug("关闭客户端{}的连接失败", connection.getSid(), e);
+        }
+    }
+
+    /**
+     * 定时输出连接数和消息发送情况，有积压或丢弃时提示，没有消息时只输出debug日志
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logStats() {
+        int maxQueueSize = 0;
+        long backlog = 0;
+        for (ClientConnection connection : connections.values()) {
+            int queueSize = connection.getQueueSize();
+            maxQueueSize = Math.max(maxQueueSize, queueSize);
+            backlog += queueSize;
+        }
+        long enqueuedCount = enqueued.getAndSet(0);
+        long sentCount = sent.getAndSet(0);
+        long droppedCount = dropped.getAndSet(0);
+        long evictedCount = evicted.getAndSet(0);
+        if (droppedCount > 0 || evictedCount > 0) {
+            log.warn("WebSocket：连接{}个，主题{}个，入队{}条，发出{}条，丢弃{}条，断开{}个，积压{}条，单连接最大积压{}条",
+                    connections.size(), subscribers.size(), enqueuedCount, sentCount, droppedCount, evictedCount, backlog, maxQueueSize);
+        } else if (enqueuedCount > 0 || sentCount > 0 || backlog > 0) {
+            log.info("WebSocket：连接{}个，主题{}个，入队{}条，发出{}条，积压{}条，单连接最大积压{}条",
+                    connections.size(), subscribers.size(), enqueuedCount, sentCount, backlog, maxQueueSize);
+        } else {
+            log.debug("WebSocket：连接{}个，主题{}个，没有消息", connections.size(), subscribers.size());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.sky.controller.user;
+
+import com.sky.context.BaseContext;
+import com.sky.service.ChatService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 聊天记录的ETag和304
+ */
+@ExtendWith(MockitoExtension.class)
+class ChatControllerTest {
+
+    private static final Long USER_ID = 7L;
+    private static final Long ORDER_ID = 1L;
+    private static final String ETAG = "\"3-100-0-100-null-20\"";
+
+    @Mock
+    private ChatService chatService;
+    @InjectMocks
+    private ChatController chatController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(chatController).build();
+        BaseContext.setCurrentId(USER_ID);
+        when(chatService.isOrderOwner(ORDER_ID, USER_ID)).thenReturn(true);
+        when(chatService.getHistoryVersion(ORDER_ID)).thenReturn("3-100-0");
+    }
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void returnsHistoryWithETag() throws Exception {
+        when(chatService.getChatHistory(ORDER_ID, 100L, null, 20)).thenReturn(Collections.emptyList());
+
+        mockMvc.perform(get("/user/chat/history/{orderId}", ORDER_ID).param("since", "100").param("limit", "20"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG));
+    }
+
+    @Test
+    void returnsNotModifiedWhenETagMatches() throws Exception {
+        mockMvc.perform(get("/user/chat/history/{orderId}", ORDER_ID).param("since", "100").param("limit", "20")
+                        .header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified());
+
+        verify(chatService, never()).getChatHistory(any(), any(), any(), any());
+    }
+}
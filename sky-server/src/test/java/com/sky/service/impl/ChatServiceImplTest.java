@@ -0,0 +1,97 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Chat;
+import com.sky.mapper.ChatMapper;
+import com.sky.properties.ChatProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天记录游标分页
+ */
+@ExtendWith(MockitoExtension.class)
+class ChatServiceImplTest {
+
+    private static final Long ORDER_ID = 1L;
+    //雪花id中时间戳左移的位数
+    private static final int TIMESTAMP_SHIFT = 22;
+
+    @Mock
+    private ChatMapper chatMapper;
+    @Spy
+    private ChatProperties chatProperties = new ChatProperties();
+    @InjectMocks
+    private ChatServiceImpl chatService;
+
+    @Test
+    void sinceLimitAppliesOnlyToNewMessages() {
+        long since = 60_000L << TIMESTAMP_SHIFT;
+        long rewound = since - (chatProperties.getHistoryOverlap() << TIMESTAMP_SHIFT);
+        Chat late = chat(since - 1);
+        Chat next = chat(since + 1);
+        when(chatMapper.selectAfter(ORDER_ID, since, 1)).thenReturn(new ArrayList<>(Collections.singletonList(next)));
+        when(chatMapper.selectBetween(ORDER_ID, rewound, since)).thenReturn(new ArrayList<>(Collections.singletonList(late)));
+
+        List<Chat> chatList = chatService.getChatHistory(ORDER_ID, since, null, 1);
+
+        // 重叠窗口内的消息不占用limit，结果中一定有比since大的消息，游标可以前进
+        assertEquals(Arrays.asList(late, next), chatList);
+    }
+
+    @Test
+    void sinceWithoutLateMessagesReturnsNewMessagesOnly() {
+        long since = 60_000L << TIMESTAMP_SHIFT;
+        Chat next = chat(since + 1);
+        when(chatMapper.selectAfter(ORDER_ID, since, 50)).thenReturn(new ArrayList<>(Collections.singletonList(next)));
+        when(chatMapper.selectBetween(eq(ORDER_ID), anyLong(), eq(since))).thenReturn(new ArrayList<>());
+
+        assertEquals(Collections.singletonList(next), chatService.getChatHistory(ORDER_ID, since, null, null));
+    }
+
+    @Test
+    void legacySinceIsNotRewound() {
+        when(chatMapper.selectAfter(ORDER_ID, 10L, 50)).thenReturn(new ArrayList<>());
+
+        chatService.getChatHistory(ORDER_ID, 10L, null, null);
+
+        verify(chatMapper, never()).selectBetween(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void beforeReturnsAscendingPage() {
+        Chat first = chat(8L);
+        Chat second = chat(9L);
+        when(chatMapper.selectBefore(ORDER_ID, 10L, 2)).thenReturn(new ArrayList<>(Arrays.asList(second, first)));
+
+        assertEquals(Arrays.asList(first, second), chatService.getChatHistory(ORDER_ID, null, 10L, 2));
+    }
+
+    @Test
+    void limitIsCappedAtMaxPageSize() {
+        when(chatMapper.selectBefore(ORDER_ID, null, 200)).thenReturn(new ArrayList<>());
+
+        chatService.getChatHistory(ORDER_ID, null, null, 10000);
+
+        verify(chatMapper).selectBefore(ORDER_ID, null, 200);
+    }
+
+    private Chat chat(long id) {
+        return Chat.builder().id(id).orderId(ORDER_ID).build();
+    }
+}
@@ -0,0 +1,91 @@
+-- 数据库增量变更脚本，按顺序执行
+
+-- 每日订单统计汇总表
+create table if not exists daily_order_stats
+(
+    stat_date         date           not null comment '统计日期（下单日期）' primary key,
+    order_count       int            not null default 0 comment '订单总数',
+    valid_order_count int            not null default 0 comment '有效订单数（已完成）',
+    turnover          decimal(12, 2) not null default 0 comment '营业额（已完成订单金额）',
+    update_time       datetime       null comment '更新时间'
+) comment '每日订单统计';
+
+-- 每日用户统计汇总表
+create table if not exists daily_user_stats
+(
+    stat_date      date     not null comment '统计日期（注册日期）' primary key,
+    new_user_count int      not null default 0 comment '新增用户数',
+    update_time    datetime null comment '更新时间'
+) comment '每日用户统计';
+
+-- 根据订单表和用户表回填全部历史数据，和DailyStatsService.rebuild的汇总口径一致
+insert into daily_order_stats (stat_date, order_count, valid_order_count, turnover, update_time)
+select date(order_time),
+       count(id),
+       sum(case when status = 5 then 1 else 0 end),
+       coalesce(sum(case when status = 5 then amount end), 0),
+       now()
+from orders
+group by date(order_time)
+on duplicate key update order_count       = values(order_count),
+                        valid_order_count = values(valid_order_count),
+                        turnover          = values(turnover),
+                        update_time       = values(update_time);
+insert into daily_user_stats (stat_date, new_user_count, update_time)
+select date(create_time), count(id), now()
+from user
+group by date(create_time)
+on duplicate key update new_user_count = values(new_user_count),
+                        update_time    = values(update_time);
+
+-- 购物车商品唯一键：菜品id、套餐id、口味可能为空，唯一索引不约束空值，用生成列拼接后建唯一索引
+alter table shopping_cart
+    add column item_key varchar(100) generated always as
+        (concat(ifnull(dish_id, 0), '-', ifnull(setmeal_id, 0), '-', ifnull(dish_flavor, ''))) stored comment '购物车商品标识';
+-- 合并已有的重复记录
+update shopping_cart sc
+    join (select user_id, item_key, min(id) as keep_id, sum(number) as total
+          from shopping_cart
+          group by user_id, item_key
+          having count(*) > 1) d on sc.id = d.keep_id
+set sc.number = d.total;
+delete sc
+from shopping_cart sc
+         join shopping_cart keep on sc.user_id = keep.user_id and sc.item_key = keep.item_key and sc.id > keep.id;
+alter table shopping_cart
+    add unique key uk_user_item (user_id, item_key);
+
+-- 订单号唯一索引，执行前先确认没有重复订单号：
+-- select number, count(*) from orders group by number having count(*) > 1;
+alter table orders
+    add unique key uk_number (number);
+
+-- 支付回调事件表：回调先落库再异步处理，进程崩溃后由定时任务重新处理
+create table if not exists pay_notify_event
+(
+    id             bigint auto_increment primary key,
+    type           int          not null comment '事件类型 1支付成功 2退款成功',
+    notify_key     varchar(64)  not null comment '去重标识：微信支付交易号或退款单号',
+    out_trade_no   varchar(50)  not null comment '商户订单号',
+    status         int          not null default 0 comment '处理状态 0待处理 1已处理 2处理失败',
+    retry_count    int          not null default 0 comment '处理失败次数',
+    create_time    datetime     null comment '创建时间',
+    update_time    datetime     null comment '更新时间',
+    unique key uk_type_notify_key (type, notify_key),
+    key idx_status_update_time (status, update_time)
+) comment '支付回调事件';
+
+-- 订单状态索引，定时任务按状态过滤并按id分页扫描（二级索引隐含主键，可直接按id顺序读取）
+alter table orders
+    add index idx_status (status);
+
+-- 聊天记录id改为bigint，WebSocket发送的消息使用雪花算法生成的id
+alter table chat
+    modify id bigint not null auto_increment;
+
+-- 聊天记录游标分页索引，按(order_id, id)定位和排序，read_status用于计算版本时不回表
+alter table chat
+    add index idx_order_id_id (order_id, id, read_status);
+
+-- redis缓存改为json格式后不再读取旧的JDK序列化数据（读到时当作缓存未命中），
+-- 升级时执行一次redis-cli flushdb清空旧缓存（菜品、套餐、工作台快照、购物车都会从数据库重新加载）